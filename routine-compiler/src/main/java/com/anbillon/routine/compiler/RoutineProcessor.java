@@ -0,0 +1,627 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * An annotation processor which generates a concrete implementation for each router interface.
+ * The generated class is named after the interface with a {@code _Routine} suffix and describes
+ * every method with a prebuilt {@code MethodSpec}, so {@code Routine.create} can skip the dynamic
+ * proxy and annotation reflection.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class RoutineProcessor extends AbstractProcessor {
+  private static final String APP_PACKAGE = "com.anbillon.routine.app.";
+  private static final String SCHEME_URL = APP_PACKAGE + "SchemeUrl";
+  private static final String PAGE_NAME = APP_PACKAGE + "PageName";
+  private static final String PAGE = APP_PACKAGE + "Page";
+  private static final String ACTION = APP_PACKAGE + "Action";
+  private static final String FLAGS = APP_PACKAGE + "Flags";
+  private static final String REQUEST_CODE = APP_PACKAGE + "RequestCode";
+  private static final String ANIM = APP_PACKAGE + "Anim";
+  private static final String CALLER = APP_PACKAGE + "Caller";
+  private static final String EXTRA = APP_PACKAGE + "Extra";
+
+  private static final String GENERATED_ROUTER = "com.anbillon.routine.GeneratedRouter";
+  private static final String METHOD_SPEC = "com.anbillon.routine.MethodSpec";
+  private static final String ROUTINE = "com.anbillon.routine.Routine";
+  private static final String SUFFIX = "_Routine";
+
+  private final Set<String> generated = new LinkedHashSet<>();
+  private Elements elements;
+  private Types types;
+  private Filer filer;
+  private Messager messager;
+
+  @Override public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    elements = processingEnv.getElementUtils();
+    types = processingEnv.getTypeUtils();
+    filer = processingEnv.getFiler();
+    messager = processingEnv.getMessager();
+  }
+
+  @Override public Set<String> getSupportedAnnotationTypes() {
+    return new LinkedHashSet<>(
+        Arrays.asList(SCHEME_URL, PAGE_NAME, PAGE, ACTION, FLAGS, REQUEST_CODE, ANIM, CALLER,
+            EXTRA));
+  }
+
+  @Override public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    Set<TypeElement> routers = new LinkedHashSet<>();
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        Element method = element.getKind() == ElementKind.PARAMETER
+            ? element.getEnclosingElement() : element;
+        Element router = method.getEnclosingElement();
+        if (router instanceof TypeElement) {
+          routers.add((TypeElement) router);
+        }
+      }
+    }
+
+    for (TypeElement router : routers) {
+      if (!generated.add(router.getQualifiedName().toString()) || !isGeneratable(router)) {
+        continue;
+      }
+
+      try {
+        String source = generateRouter(router);
+        if (source != null) {
+          writeSource(router, source);
+        }
+      } catch (IOException e) {
+        error(router, "Unable to write router for %s: %s", router, e.getMessage());
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * To check if the router can be implemented by a generated class. Routers which can not be
+   * generated will fall back to dynamic proxy at runtime.
+   */
+  private boolean isGeneratable(TypeElement router) {
+    if (router.getKind() != ElementKind.INTERFACE) {
+      error(router, "API declarations must be interfaces.");
+      return false;
+    }
+
+    if (!router.getInterfaces().isEmpty()) {
+      error(router, "API interfaces must not extend other interfaces.");
+      return false;
+    }
+
+    if (!router.getTypeParameters().isEmpty()) {
+      return false;
+    }
+
+    for (Element e = router; e instanceof TypeElement; e = e.getEnclosingElement()) {
+      if (e.getModifiers().contains(Modifier.PRIVATE)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private String generateRouter(TypeElement router) {
+    PackageElement packageElement = elements.getPackageOf(router);
+    String packageName = packageElement.getQualifiedName().toString();
+    String binaryName = elements.getBinaryName(router).toString();
+    String className = packageName.isEmpty()
+        ? binaryName + SUFFIX : binaryName.substring(packageName.length() + 1) + SUFFIX;
+
+    StringBuilder specs = new StringBuilder();
+    StringBuilder methods = new StringBuilder();
+    boolean valid = true;
+    int index = 0;
+    for (ExecutableElement method : ElementFilter.methodsIn(router.getEnclosedElements())) {
+      Set<Modifier> modifiers = method.getModifiers();
+      if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.DEFAULT)) {
+        continue;
+      }
+
+      String spec = methodSpec(router, method);
+      if (spec == null) {
+        valid = false;
+        continue;
+      }
+
+      specs.append(index == 0 ? "" : ",\n").append(spec);
+      methods.append(methodOverride(method, index));
+      index++;
+    }
+
+    if (!valid) {
+      return null;
+    }
+
+    StringBuilder source = new StringBuilder();
+    source.append("// Generated code from Routine. Do not modify!\n");
+    if (!packageName.isEmpty()) {
+      source.append("package ").append(packageName).append(";\n\n");
+    }
+    source.append("@SuppressWarnings(\"unchecked\")\n")
+        .append("public final class ")
+        .append(className)
+        .append(" extends ")
+        .append(GENERATED_ROUTER)
+        .append(" implements ")
+        .append(router.getQualifiedName())
+        .append(" {\n")
+        .append("  private static final ")
+        .append(METHOD_SPEC)
+        .append("[] METHOD_SPECS = {\n")
+        .append(specs)
+        .append("\n  };\n\n")
+        .append("  public ")
+        .append(className)
+        .append("(")
+        .append(ROUTINE)
+        .append(" routine) {\n")
+        .append("    super(routine, METHOD_SPECS);\n")
+        .append("  }\n")
+        .append(methods)
+        .append("}\n");
+
+    return source.toString();
+  }
+
+  /**
+   * Generate the {@code MethodSpec} expression for given method, validating it the same way
+   * {@code RouterMethod.Builder} does at runtime.
+   *
+   * @return expression of method spec, or null if there's any error
+   */
+  private String methodSpec(TypeElement router, ExecutableElement method) {
+    if (!method.getTypeParameters().isEmpty()) {
+      error(method, "Router method must not have type variables.");
+      return null;
+    }
+
+    TypeMirror returnType = method.getReturnType();
+    String returnTypeExpression = typeExpression(returnType);
+    if (returnTypeExpression == null) {
+      error(method, "Method return type must not include a type variable or wildcard: %s",
+          returnType);
+      return null;
+    }
+
+    /* same as the name of reflected methods at runtime, which tells overloads apart */
+    StringBuilder name = new StringBuilder()
+        .append(elements.getBinaryName(router))
+        .append('.')
+        .append(method.getSimpleName())
+        .append('(');
+    List<? extends VariableElement> parameters = method.getParameters();
+    for (int p = 0; p < parameters.size(); p++) {
+      if (p > 0) {
+        name.append(',');
+      }
+      name.append(className(parameters.get(p).asType()));
+    }
+    name.append(')');
+    StringBuilder spec = new StringBuilder();
+    spec.append("      new ")
+        .append(METHOD_SPEC)
+        .append(".Builder(")
+        .append(literal(name))
+        .append(", ")
+        .append(returnTypeExpression)
+        .append(")");
+
+    boolean gotMethodAnnotation = false;
+    boolean gotSchemeUrl = false;
+    boolean gotPageName = false;
+    boolean gotAction = false;
+    boolean gotRequestCode = false;
+    for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+      String type = annotationType(mirror);
+      Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+          elements.getElementValuesWithDefaults(mirror);
+      if (SCHEME_URL.equals(type)) {
+        gotSchemeUrl = true;
+        spec.append("\n          .schemeUrl(").append(literal(value(values, "value"))).append(")");
+      } else if (PAGE_NAME.equals(type)) {
+        gotPageName = true;
+        spec.append("\n          .pageName(").append(literal(value(values, "value"))).append(")");
+      } else if (PAGE.equals(type)) {
+        Object page = value(values, "value");
+        if (!(page instanceof TypeMirror)) {
+          /* unresolved class, compiler has already reported it */
+          return null;
+        }
+        spec.append("\n          .page(").append(classLiteral((TypeMirror) page)).append(")");
+      } else if (ACTION.equals(type)) {
+        gotAction = true;
+        spec.append("\n          .action(").append(literal(value(values, "value"))).append(")");
+      } else if (FLAGS.equals(type)) {
+        spec.append("\n          .flags(")
+            .append(value(values, "value"))
+            .append(", ")
+            .append(value(values, "set"))
+            .append(")");
+      } else if (REQUEST_CODE.equals(type)) {
+        gotRequestCode = true;
+        spec.append("\n          .requestCode(").append(value(values, "value")).append(")");
+      } else if (ANIM.equals(type)) {
+        spec.append("\n          .anim(")
+            .append(value(values, "enter"))
+            .append(", ")
+            .append(value(values, "exit"))
+            .append(")");
+      } else if (isRuntimeRetained(mirror)) {
+        /* runtime parses every annotation retained at runtime and fails on an unknown one */
+        error(method, "No routine method annotation found: @%s", type);
+        return null;
+      } else {
+        continue;
+      }
+
+      gotMethodAnnotation = true;
+    }
+
+    boolean gotCaller = false;
+    for (int p = 0; p < parameters.size(); p++) {
+      VariableElement parameter = parameters.get(p);
+      TypeMirror parameterType = parameter.asType();
+      if (typeExpression(parameterType) == null) {
+        error(parameter, "Parameter type must not include a type variable or wildcard: %s",
+            parameterType);
+        return null;
+      }
+
+      String handler = null;
+      for (AnnotationMirror mirror : parameter.getAnnotationMirrors()) {
+        String type = annotationType(mirror);
+        String current;
+        if (CALLER.equals(type)) {
+          if (gotCaller) {
+            error(parameter, "Multiple @Caller parameter annotations found.");
+            return null;
+          }
+          gotCaller = true;
+          current = ".callerParameter()";
+        } else if (SCHEME_URL.equals(type)) {
+          if (gotSchemeUrl) {
+            error(parameter, "Multiple @SchemeUrl annotations found on method and parameter.");
+            return null;
+          }
+          gotSchemeUrl = true;
+          current = ".schemeUrlParameter()";
+        } else if (PAGE_NAME.equals(type)) {
+          if (gotPageName) {
+            error(parameter, "Multiple @PageName annotations found on method and parameter.");
+            return null;
+          }
+          gotPageName = true;
+          current = ".pageNameParameter()";
+        } else if (ACTION.equals(type)) {
+          if (gotAction) {
+            error(parameter, "Multiple @Action annotations found on method and parameter.");
+            return null;
+          }
+          gotAction = true;
+          current = ".actionParameter()";
+        } else if (REQUEST_CODE.equals(type)) {
+          if (gotRequestCode) {
+            error(parameter, "Multiple @RequestCode annotations found on method and parameter.");
+            return null;
+          }
+          gotRequestCode = true;
+          if (parameterType.getKind() != TypeKind.INT) {
+            error(parameter, "@RequestCode must be int type.");
+            return null;
+          }
+          current = ".requestCodeParameter()";
+        } else if (EXTRA.equals(type)) {
+          String extraName = (String) value(elements.getElementValuesWithDefaults(mirror), "value");
+          if (extraName.isEmpty()
+              && !isType(parameterType, "android.os.Bundle")
+              && !isType(parameterType, "android.content.Intent")
+              && !isType(parameterType, "android.net.Uri")) {
+            error(parameter,
+                "@Extra must be android.os.Bundle, android.content.Intent or android.net.Uri "
+                    + "type. Otherwise @Extra must have a name like @Extra(\"id\")");
+            return null;
+          }
+          current = ".extraParameter("
+              + literal(extraName)
+              + ", "
+              + typeExpression(parameterType)
+              + ")";
+        } else {
+          continue;
+        }
+
+        if (handler != null) {
+          error(parameter, "Multiple Routine annotations found, only one allowed.");
+          return null;
+        }
+        handler = current;
+      }
+
+      if (handler == null) {
+        error(parameter, "No Routine annotation found. (parameter #%s)", p + 1);
+        return null;
+      }
+      spec.append("\n          ").append(handler);
+    }
+
+    if (!gotMethodAnnotation && !gotSchemeUrl && !gotPageName && !gotAction) {
+      error(method,
+          "Routine method annotation is required (@SchemeUrl, @Page, @PageName or @Action).");
+      return null;
+    }
+
+    if (!gotCaller) {
+      error(method, "A router must contain one @Caller.");
+      return null;
+    }
+
+    return spec.append("\n          .build()").toString();
+  }
+
+  private String methodOverride(ExecutableElement method, int index) {
+    TypeMirror returnType = method.getReturnType();
+    List<? extends VariableElement> parameters = method.getParameters();
+
+    StringBuilder override = new StringBuilder();
+    override.append("\n  @Override public ")
+        .append(returnType)
+        .append(" ")
+        .append(method.getSimpleName())
+        .append("(");
+    StringBuilder args = new StringBuilder();
+    for (int p = 0; p < parameters.size(); p++) {
+      VariableElement parameter = parameters.get(p);
+      TypeMirror parameterType = parameter.asType();
+      if (p > 0) {
+        override.append(", ");
+        args.append(", ");
+      }
+
+      if (method.isVarArgs() && p == parameters.size() - 1) {
+        override.append(((ArrayType) parameterType).getComponentType()).append("...");
+      } else {
+        override.append(parameterType);
+      }
+      override.append(" ").append(parameter.getSimpleName());
+      args.append(parameter.getSimpleName());
+    }
+    override.append(") {\n    ");
+
+    /* always pass an explicit array, a single array argument must not be spread as varargs */
+    String invocation = "invoke(" + index + ", new Object[] { " + args + " })";
+    TypeKind kind = returnType.getKind();
+    if (kind == TypeKind.VOID) {
+      override.append(invocation);
+    } else if (kind.isPrimitive()) {
+      override.append("return (")
+          .append(types.boxedClass(types.getPrimitiveType(kind)).getQualifiedName())
+          .append(") ")
+          .append(invocation);
+    } else {
+      override.append("return (").append(returnType).append(") ").append(invocation);
+    }
+
+    return override.append(";\n  }\n").toString();
+  }
+
+  /**
+   * Returns a java expression which creates the {@link java.lang.reflect.Type} of given mirror, or
+   * null if the type includes a type variable or wildcard.
+   */
+  private String typeExpression(TypeMirror type) {
+    switch (type.getKind()) {
+      case VOID:
+      case BOOLEAN:
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case CHAR:
+      case FLOAT:
+      case DOUBLE:
+      case ARRAY:
+        return classLiteral(type);
+
+      case DECLARED:
+        List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+        if (typeArguments.isEmpty()) {
+          return classLiteral(type);
+        }
+
+        StringBuilder expression = new StringBuilder();
+        expression.append(METHOD_SPEC)
+            .append(".parameterizedType(")
+            .append(classLiteral(type));
+        for (TypeMirror typeArgument : typeArguments) {
+          String argument = typeExpression(typeArgument);
+          if (argument == null) {
+            return null;
+          }
+          expression.append(", ").append(argument);
+        }
+        return expression.append(")").toString();
+
+      default:
+        return null;
+    }
+  }
+
+  private String classLiteral(TypeMirror type) {
+    return types.erasure(type) + ".class";
+  }
+
+  /**
+   * Returns the name of given type as {@link Class#getName()} does at runtime.
+   */
+  private String className(TypeMirror type) {
+    TypeMirror erasure = types.erasure(type);
+    switch (erasure.getKind()) {
+      case ARRAY:
+        return "[" + descriptor(((ArrayType) erasure).getComponentType());
+      case DECLARED:
+        return elements.getBinaryName((TypeElement) types.asElement(erasure)).toString();
+      default:
+        return erasure.toString();
+    }
+  }
+
+  private String descriptor(TypeMirror type) {
+    TypeMirror erasure = types.erasure(type);
+    switch (erasure.getKind()) {
+      case BOOLEAN:
+        return "Z";
+      case BYTE:
+        return "B";
+      case SHORT:
+        return "S";
+      case INT:
+        return "I";
+      case LONG:
+        return "J";
+      case CHAR:
+        return "C";
+      case FLOAT:
+        return "F";
+      case DOUBLE:
+        return "D";
+      case ARRAY:
+        return "[" + descriptor(((ArrayType) erasure).getComponentType());
+      default:
+        return "L" + className(erasure) + ";";
+    }
+  }
+
+  private boolean isType(TypeMirror type, String name) {
+    return type.getKind() == TypeKind.DECLARED
+        && ((TypeElement) types.asElement(type)).getQualifiedName().contentEquals(name);
+  }
+
+  private static boolean isRuntimeRetained(AnnotationMirror mirror) {
+    Retention retention = mirror.getAnnotationType().asElement().getAnnotation(Retention.class);
+    return retention != null && retention.value() == RetentionPolicy.RUNTIME;
+  }
+
+  private static String annotationType(AnnotationMirror mirror) {
+    return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+  }
+
+  private static Object value(Map<? extends ExecutableElement, ? extends AnnotationValue> values,
+      String name) {
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values
+        .entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue();
+      }
+    }
+
+    throw new IllegalStateException("No annotation value found: " + name);
+  }
+
+  private static String literal(Object value) {
+    String string = String.valueOf(value);
+    StringBuilder result = new StringBuilder(string.length() + 2);
+    result.append('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          result.append("\\\"");
+          break;
+        case '\\':
+          result.append("\\\\");
+          break;
+        case '\n':
+          result.append("\\n");
+          break;
+        case '\r':
+          result.append("\\r");
+          break;
+        case '\t':
+          result.append("\\t");
+          break;
+        default:
+          if (Character.isISOControl(c)) {
+            result.append(String.format("\\u%04x", (int) c));
+          } else {
+            result.append(c);
+          }
+      }
+    }
+
+    return result.append('"').toString();
+  }
+
+  private void writeSource(TypeElement router, String source) throws IOException {
+    String name = elements.getBinaryName(router) + SUFFIX;
+    JavaFileObject file = filer.createSourceFile(name, router);
+    Writer writer = file.openWriter();
+    try {
+      writer.write(source);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void error(Element element, String message, Object... args) {
+    messager.printMessage(Diagnostic.Kind.ERROR, String.format(message, args), element);
+  }
+}
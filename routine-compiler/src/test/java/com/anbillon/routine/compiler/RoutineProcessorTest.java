@@ -0,0 +1,206 @@
+package com.anbillon.routine.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link RoutineProcessor} on in-memory sources. Routine annotations are declared here since
+ * the real ones live in an android library, and sources are only processed, not compiled.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public class RoutineProcessorTest {
+  private static final String[] ANNOTATIONS = {
+      "@Target({ METHOD, PARAMETER }) public @interface SchemeUrl { String value() default \"\"; }",
+      "@Target({ METHOD, PARAMETER }) public @interface PageName { String value() default \"\"; }",
+      "@Target(METHOD) public @interface Page { Class<?> value() default Void.class; }",
+      "@Target({ METHOD, PARAMETER }) public @interface Action { String value() default \"\"; }",
+      "@Target(METHOD) public @interface Flags "
+          + "{ int value() default 0; boolean set() default false; }",
+      "@Target({ METHOD, PARAMETER }) public @interface RequestCode { int value() default -1; }",
+      "@Target(METHOD) public @interface Anim { int enter() default 0; int exit() default 0; }",
+      "@Target(PARAMETER) public @interface Caller {}",
+      "@Target(PARAMETER) public @interface Extra { String value() default \"\"; }",
+  };
+
+  @Test public void generateRouter() throws Exception {
+    Result result = process("test.Navigator", ""
+        + "package test;\n"
+        + "import com.anbillon.routine.app.*;\n"
+        + "public interface Navigator {\n"
+        + "  @SchemeUrl(\"demo://test/login\") @Flags(value = 4, set = true)\n"
+        + "  @SuppressWarnings(\"unused\")\n"
+        + "  boolean navigateToLogin(@Caller Object context, @Extra(\"id\") long id);\n"
+        + "  @PageName(\"test.DemoActivity\") void navigateToDemo(@Caller Object context,\n"
+        + "      @RequestCode int requestCode);\n"
+        + "}\n");
+
+    assertEquals(Collections.<String>emptyList(), result.errors);
+    String source = result.generated.get("test.Navigator_Routine");
+    assertTrue(source, source.contains("public final class Navigator_Routine "
+        + "extends com.anbillon.routine.GeneratedRouter implements test.Navigator"));
+    assertTrue(source, source.contains("new com.anbillon.routine.MethodSpec.Builder("
+        + "\"test.Navigator.navigateToLogin(java.lang.Object,long)\", boolean.class)\n"
+        + "          .schemeUrl(\"demo://test/login\")\n"
+        + "          .flags(4, true)\n"
+        + "          .callerParameter()\n"
+        + "          .extraParameter(\"id\", long.class)\n"
+        + "          .build()"));
+    assertTrue(source, source.contains("@Override public boolean navigateToLogin("
+        + "java.lang.Object context, long id) {\n"
+        + "    return (java.lang.Boolean) invoke(0, new Object[] { context, id });"));
+    assertTrue(source, source.contains("@Override public void navigateToDemo("
+        + "java.lang.Object context, int requestCode) {\n"
+        + "    invoke(1, new Object[] { context, requestCode });"));
+  }
+
+  @Test public void methodNameMatchesReflection() throws Exception {
+    Result result = process("test.Navigator", ""
+        + "package test;\n"
+        + "import com.anbillon.routine.app.*;\n"
+        + "public interface Navigator {\n"
+        + "  @SchemeUrl(\"demo://test/login\") void navigateToLogin(@Caller Object context,\n"
+        + "      @Extra(\"ids\") int[] ids, @Extra(\"names\") java.util.List<String>[] names);\n"
+        + "}\n");
+
+    assertEquals(Collections.<String>emptyList(), result.errors);
+    String source = result.generated.get("test.Navigator_Routine");
+    assertTrue(source, source.contains("\"test.Navigator.navigateToLogin("
+        + "java.lang.Object,[I,[Ljava.util.List;)\""));
+  }
+
+  @Test public void unknownRuntimeMethodAnnotation() throws Exception {
+    Result result = process("test.Navigator", ""
+        + "package test;\n"
+        + "import com.anbillon.routine.app.*;\n"
+        + "import java.lang.annotation.*;\n"
+        + "public interface Navigator {\n"
+        + "  @Retention(RetentionPolicy.RUNTIME) @interface Tracked {}\n"
+        + "  @SchemeUrl(\"demo://test/login\") @Tracked\n"
+        + "  void navigateToLogin(@Caller Object context);\n"
+        + "}\n");
+
+    assertEquals(1, result.errors.size());
+    assertTrue(result.errors.get(0),
+        result.errors.get(0)
+            .contains("No routine method annotation found: @test.Navigator.Tracked"));
+    assertTrue(result.generated.isEmpty());
+  }
+
+  @Test public void callerRequired() throws Exception {
+    Result result = process("test.Navigator", ""
+        + "package test;\n"
+        + "import com.anbillon.routine.app.*;\n"
+        + "public interface Navigator {\n"
+        + "  @SchemeUrl(\"demo://test/login\") void navigateToLogin(@Extra(\"id\") long id);\n"
+        + "}\n");
+
+    assertEquals(Collections.singletonList("A router must contain one @Caller."), result.errors);
+  }
+
+  @Test public void parameterAnnotationRequired() throws Exception {
+    Result result = process("test.Navigator", ""
+        + "package test;\n"
+        + "import com.anbillon.routine.app.*;\n"
+        + "public interface Navigator {\n"
+        + "  @SchemeUrl(\"demo://test/login\")\n"
+        + "  void navigateToLogin(@Caller Object context, long id);\n"
+        + "}\n");
+
+    assertEquals(Collections.singletonList("No Routine annotation found. (parameter #2)"),
+        result.errors);
+  }
+
+  private static Result process(String name, String source) {
+    List<JavaFileObject> sources = new ArrayList<>();
+    sources.add(source(name, source));
+    for (String annotation : ANNOTATIONS) {
+      String simpleName = annotation.substring(annotation.indexOf("@interface ") + 11);
+      simpleName = simpleName.substring(0, simpleName.indexOf(' '));
+      sources.add(source("com.anbillon.routine.app." + simpleName, ""
+          + "package com.anbillon.routine.app;\n"
+          + "import java.lang.annotation.*;\n"
+          + "import static java.lang.annotation.ElementType.*;\n"
+          + "@Retention(RetentionPolicy.RUNTIME) " + annotation + "\n"));
+    }
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    final Result result = new Result();
+    JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(
+        compiler.getStandardFileManager(diagnostics, null, null)) {
+      @Override public JavaFileObject getJavaFileForOutput(Location location,
+          final String className, JavaFileObject.Kind kind, FileObject sibling) {
+        URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+        return new SimpleJavaFileObject(uri, kind) {
+          @Override public Writer openWriter() {
+            return new StringWriter() {
+              @Override public void close() {
+                result.generated.put(className, toString());
+              }
+            };
+          }
+
+          @Override public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            /* generated sources are parsed again in the next round */
+            return result.generated.get(className);
+          }
+
+          @Override public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream();
+          }
+        };
+      }
+    };
+
+    JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+        Arrays.asList("-proc:only"), null, sources);
+    task.setProcessors(Collections.singletonList(new RoutineProcessor()));
+    task.call();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      /* generated sources refer to the android runtime which is not on the classpath here */
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR
+          && sources.contains(diagnostic.getSource())) {
+        result.errors.add(diagnostic.getMessage(null));
+      }
+    }
+    return result;
+  }
+
+  private static JavaFileObject source(String name, final String code) {
+    return new SimpleJavaFileObject(
+        URI.create("mem:///" + name.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+        JavaFileObject.Kind.SOURCE) {
+      @Override public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return code;
+      }
+    };
+  }
+
+  private static final class Result {
+    final List<String> errors = new ArrayList<>();
+    final Map<String, String> generated = new LinkedHashMap<>();
+  }
+}
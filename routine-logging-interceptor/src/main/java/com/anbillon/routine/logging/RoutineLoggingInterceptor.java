@@ -21,17 +21,20 @@ import android.os.Parcelable;
 import android.util.Log;
 import com.anbillon.routine.Interceptor;
 import com.anbillon.routine.Router;
+import com.anbillon.routine.RouterObserver;
 import com.anbillon.routine.RoutineException;
 import java.io.Serializable;
 import java.lang.reflect.Type;
 import java.util.Arrays;
 
 /**
- * A Routine interceptor which logs router call information.
+ * A Routine interceptor which logs router call information. It can also be added with {@link
+ * com.anbillon.routine.Routine.Builder#addObserver(RouterObserver)} to log the final router in
+ * background instead of on the navigation path.
  *
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
-public final class RoutineLoggingInterceptor implements Interceptor {
+public final class RoutineLoggingInterceptor implements Interceptor, RouterObserver {
   private Logger logger;
   private volatile Level level = Level.NONE;
 
@@ -57,9 +60,13 @@ public final class RoutineLoggingInterceptor implements Interceptor {
 
   @Override public Router intercept(Chain chain) throws RoutineException {
     Router router = chain.router();
+    onRouter(router);
+    return chain.proceed(router);
+  }
 
+  @Override public void onRouter(Router router) {
     if (level == Level.NONE) {
-      return chain.proceed(router);
+      return;
     }
 
     logger.log("-->" + ' ' + router.method() + ' ' + router.target());
@@ -93,8 +100,6 @@ public final class RoutineLoggingInterceptor implements Interceptor {
     }
 
     logger.log("<-- END" + ' ' + router.method());
-
-    return chain.proceed(router);
   }
 
   private String valueToString(Object value) {
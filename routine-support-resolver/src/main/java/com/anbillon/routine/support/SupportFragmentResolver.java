@@ -22,6 +22,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.v4.app.ActivityOptionsCompat;
 import android.support.v4.app.Fragment;
+import android.support.v4.content.ContextCompat;
 import com.anbillon.routine.Resolver;
 
 /**
@@ -55,6 +56,11 @@ final class SupportFragmentResolver implements Resolver {
     fragment.startActivityForResult(intent, requestCode, options(enterAnim, exitAnim));
   }
 
+  @Override public void startActivities(Intent[] intents, int enterAnim, int exitAnim)
+      throws ActivityNotFoundException {
+    ContextCompat.startActivities(fragment.getActivity(), intents, options(enterAnim, exitAnim));
+  }
+
   private Bundle options(int enterAnim, int exitAnim) {
     Bundle options = null;
     if (enterAnim != 0 || exitAnim != 0) {
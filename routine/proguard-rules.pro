@@ -5,4 +5,6 @@
 
 -keepclasseswithmembers class * {
     @com.anbillon.routine.app.* <methods>;
-}
\ No newline at end of file
+}
+
+-keep class **_Routine { public <init>(com.anbillon.routine.Routine); }
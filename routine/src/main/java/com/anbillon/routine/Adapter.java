@@ -44,7 +44,8 @@ public interface Adapter<T> {
   abstract class Factory {
     /**
      * Returns an adapter for interface methods that return {@code returnType}, or null if it
-     * cannot be handled by this factory.
+     * cannot be handled by this factory. The returned adapter is shared by all methods with the
+     * same return type and annotations, the built-in annotations of routine are not included.
      */
     public abstract Adapter<?> get(Type returnType, Annotation[] annotations, Routine routine);
 
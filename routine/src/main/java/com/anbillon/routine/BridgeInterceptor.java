@@ -38,6 +38,11 @@ final class BridgeInterceptor implements Interceptor {
     String target = router.target();
     Intent intent = router.intent();
     Context context = router.context();
+    InterceptorChain realChain = (InterceptorChain) chain;
+    EventListener eventListener = realChain.eventListener();
+    if (eventListener != null) {
+      eventListener.resolveStart(realChain.call(), router);
+    }
 
     /* check the method to build intent */
     switch (router.method()) {
@@ -57,6 +62,12 @@ final class BridgeInterceptor implements Interceptor {
 
       case PAGE_NAME:
       case PAGE:
+        /* page class is resolved ahead for static pages, avoid looking up on every call */
+        Class<?> page = router.page();
+        if (page != null) {
+          intent.setClass(context, page);
+          break;
+        }
         try {
           intent.setClass(context, Class.forName(target));
         } catch (ClassNotFoundException ignore) {
@@ -70,6 +81,9 @@ final class BridgeInterceptor implements Interceptor {
       default:
         break;
     }
+    if (eventListener != null) {
+      eventListener.resolveEnd(realChain.call(), intent);
+    }
 
     return chain.proceed(builder.intent(intent).build());
   }
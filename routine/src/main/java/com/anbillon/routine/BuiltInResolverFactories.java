@@ -74,6 +74,15 @@ final class BuiltInResolverFactories extends Resolver.Factory {
       }
       activity.overridePendingTransition(enterAnim, exitAnim);
     }
+
+    @Override public void startActivities(Intent[] intents, int enterAnim, int exitAnim)
+        throws ActivityNotFoundException {
+      activity.startActivities(intents);
+      if (enterAnim == 0 && exitAnim == 0) {
+        return;
+      }
+      activity.overridePendingTransition(enterAnim, exitAnim);
+    }
   }
 
   static final class FragmentResolver implements Resolver {
@@ -109,6 +118,15 @@ final class BuiltInResolverFactories extends Resolver.Factory {
       }
       fragment.getActivity().overridePendingTransition(enterAnim, exitAnim);
     }
+
+    @Override public void startActivities(Intent[] intents, int enterAnim, int exitAnim)
+        throws ActivityNotFoundException {
+      fragment.getActivity().startActivities(intents);
+      if (enterAnim == 0 && exitAnim == 0) {
+        return;
+      }
+      fragment.getActivity().overridePendingTransition(enterAnim, exitAnim);
+    }
   }
 
   static final class ContextResolver implements Resolver {
@@ -137,5 +155,12 @@ final class BuiltInResolverFactories extends Resolver.Factory {
         throws ActivityNotFoundException {
       throw new RuntimeException("Unsupported method for this type of resolver.");
     }
+
+    @Override public void startActivities(Intent[] intents, int enterAnim, int exitAnim)
+        throws ActivityNotFoundException {
+      /* the first activity starts a new task when not started from an activity */
+      intents[0].addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+      context.startActivities(intents);
+    }
   }
 }
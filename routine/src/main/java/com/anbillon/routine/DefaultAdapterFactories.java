@@ -25,14 +25,21 @@ import java.lang.reflect.Type;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 final class DefaultAdapterFactories extends Adapter.Factory {
+  /* default adapters are stateless, share them across all router methods */
+  private static final VoidAdapter VOID_ADAPTER = new VoidAdapter();
+  private static final BooleanAdapter BOOLEAN_ADAPTER = new BooleanAdapter();
+  private static final RouterAdapter ROUTER_ADAPTER = new RouterAdapter();
+  private static final CallAdapter CALL_ADAPTER = new CallAdapter();
 
   @Override public Adapter<?> get(Type returnType, Annotation[] annotations, Routine routine) {
     if (returnType == void.class || returnType == Void.class) {
-      return new VoidAdapter();
+      return VOID_ADAPTER;
     } else if (returnType == boolean.class || returnType == Boolean.class) {
-      return new BooleanAdapter();
+      return BOOLEAN_ADAPTER;
     } else if (returnType == Router.class) {
-      return new RouterAdapter();
+      return ROUTER_ADAPTER;
+    } else if (getRawType(returnType) == RouterCall.class) {
+      return CALL_ADAPTER;
     }
 
     return null;
@@ -79,4 +86,14 @@ final class DefaultAdapterFactories extends Adapter.Factory {
       }
     }
   }
+
+  static final class CallAdapter implements Adapter<RouterCall> {
+    @Override public Type callType() {
+      return RouterCall.class;
+    }
+
+    @Override public RouterCall adapt(RouterCall call) {
+      return call;
+    }
+  }
 }
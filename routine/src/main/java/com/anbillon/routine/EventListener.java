@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import android.content.Intent;
+
+/**
+ * Listener for the phases of router calls, such as the time spent in each interceptor. Extend this
+ * class and override the methods of interest. Each call gets its own listener created by {@link
+ * Factory}, nothing is invoked if no factory is installed. All methods are invoked synchronously on
+ * the thread of the phase, so implementations should be fast.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ * @see TimingEventListener
+ */
+public abstract class EventListener {
+  /**
+   * Invoked when a router method has been invoked and dispatched to its call.
+   *
+   * @param call router call
+   * @param dispatchNanos time spent from the router interface to the call
+   */
+  public void callStart(RouterCall<?> call, long dispatchNanos) {
+  }
+
+  /**
+   * Invoked before the router is created from arguments of router method.
+   */
+  public void toRouterStart(RouterCall<?> call) {
+  }
+
+  /**
+   * Invoked after the router is created from arguments of router method.
+   */
+  public void toRouterEnd(RouterCall<?> call, Router router) {
+  }
+
+  /**
+   * Invoked before each interceptor, including built-in ones. The time until {@link
+   * #interceptorEnd} includes the following interceptors.
+   */
+  public void interceptorStart(RouterCall<?> call, Interceptor interceptor) {
+  }
+
+  /**
+   * Invoked after each interceptor has returned or thrown, so it always pairs with {@link
+   * #interceptorStart}. If the call has timed out, this is still invoked on the thread of the
+   * abandoned chain, possibly after {@link #callFailed}.
+   */
+  public void interceptorEnd(RouterCall<?> call, Interceptor interceptor) {
+  }
+
+  /**
+   * Invoked before the router is resolved into an intent.
+   */
+  public void resolveStart(RouterCall<?> call, Router router) {
+  }
+
+  /**
+   * Invoked after the router is resolved into an intent.
+   */
+  public void resolveEnd(RouterCall<?> call, Intent intent) {
+  }
+
+  /**
+   * Invoked before a scheme url is matched with the matcher of filters.
+   */
+  public void matchStart(RouterCall<?> call, String schemeUrl) {
+  }
+
+  /**
+   * Invoked after a scheme url is matched with the matcher of filters.
+   *
+   * @param intent matched intent, or null if not matched
+   */
+  public void matchEnd(RouterCall<?> call, Intent intent) {
+  }
+
+  /**
+   * Invoked before the activity is started by resolver.
+   */
+  public void startActivityStart(RouterCall<?> call, Router router) {
+  }
+
+  /**
+   * Invoked after the activity is started by resolver.
+   *
+   * @param started true if the page has been opened, otherwise false
+   */
+  public void startActivityEnd(RouterCall<?> call, boolean started) {
+  }
+
+  /**
+   * Invoked when {@link RouterCall#router()}, {@link RouterCall#execute()} or {@link
+   * RouterCall#enqueue(RouterCall.Callback)} of the call has completed.
+   */
+  public void callEnd(RouterCall<?> call) {
+  }
+
+  /**
+   * Invoked when the call has been interrupted by an interceptor.
+   */
+  public void callFailed(RouterCall<?> call, RoutineException e) {
+  }
+
+  public interface Factory {
+    /**
+     * Creates an instance of the {@link EventListener} for a particular {@link RouterCall}.
+     */
+    EventListener create(RouterCall<?> call);
+  }
+}
@@ -26,10 +26,10 @@ import static com.anbillon.routine.Method.SCHEME_URL;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 final class FiltersInterceptor implements Interceptor {
-  private final Matcher matcher;
+  private final Routine routine;
 
-  FiltersInterceptor(Matcher matcher) {
-    this.matcher = matcher;
+  FiltersInterceptor(Routine routine) {
+    this.routine = routine;
   }
 
   @Override public Router intercept(Chain chain) throws RoutineException {
@@ -38,7 +38,17 @@ final class FiltersInterceptor implements Interceptor {
       return chain.proceed(router);
     }
 
-    Intent intent = matcher.match(router.context(), router.target());
+    InterceptorChain realChain = (InterceptorChain) chain;
+    EventListener eventListener = realChain.eventListener();
+    if (eventListener != null) {
+      eventListener.matchStart(realChain.call(), router.target());
+    }
+    /* matcher is looked up on each call since filters may be invalidated */
+    Intent intent =
+        routine.matcher().match(router.context(), router.target(), routine.resolutionCache);
+    if (eventListener != null) {
+      eventListener.matchEnd(realChain.call(), intent);
+    }
     if (intent == null) {
       return chain.proceed(router);
     }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+/**
+ * Base class of routers generated by {@code routine-compiler}. A generated router is named after
+ * its interface with a {@code _Routine} suffix and is picked up by {@link Routine#create(Class)}
+ * instead of a dynamic proxy. This class is not intended to be extended by hand.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public abstract class GeneratedRouter {
+  static final String SUFFIX = "_Routine";
+
+  private final Routine routine;
+  final MethodSpec[] methodSpecs;
+  private final RouterMethod<?>[] routerMethods;
+
+  protected GeneratedRouter(Routine routine, MethodSpec[] methodSpecs) {
+    this.routine = routine;
+    this.methodSpecs = methodSpecs;
+    this.routerMethods = new RouterMethod<?>[methodSpecs.length];
+  }
+
+  /**
+   * Invoke the router method at {@code index} with given arguments.
+   *
+   * @param index index of method in generated specs
+   * @param args arguments of this invocation
+   * @return adapted result of router call
+   */
+  @SuppressWarnings("unchecked") protected final Object invoke(int index, Object... args) {
+    long start = routine.dispatchStarted();
+    RouterMethod<Object> routerMethod = (RouterMethod<Object>) routerMethods[index];
+    if (routerMethod == null) {
+      /* router method is memoized by routine and immutable, a racy publish is fine here */
+      routerMethod = (RouterMethod<Object>) routine.loadRouterMethod(methodSpecs[index]);
+      routerMethods[index] = routerMethod;
+    }
+
+    return routine.invoke(routerMethod, args, start);
+  }
+}
@@ -16,6 +16,11 @@
 
 package com.anbillon.routine;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Typically interceptors add, remove, or transform intent on router.
  *
@@ -31,4 +36,59 @@ public interface Interceptor {
 
     Router proceed(Router router) throws RoutineException;
   }
+
+  /**
+   * The scope of routers an interceptor applies to, see {@link
+   * Routine.Builder#addInterceptor(Interceptor, Scope)}. An interceptor out of scope is never
+   * invoked. Instances of this class are immutable.
+   */
+  final class Scope {
+    final Set<Method> methods;
+    final String[] targetPrefixes;
+
+    Scope(Builder builder) {
+      this.methods = builder.methods.isEmpty() ? EnumSet.allOf(Method.class)
+          : EnumSet.copyOf(builder.methods);
+      this.targetPrefixes = builder.targetPrefixes.toArray(new String[0]);
+    }
+
+    /**
+     * Returns true if the interceptor applies to routers of given method regardless of target.
+     */
+    boolean matchesMethod(Method method) {
+      return methods.contains(method);
+    }
+
+    public static final class Builder {
+      private final Set<Method> methods = EnumSet.noneOf(Method.class);
+      private final List<String> targetPrefixes = new ArrayList<>();
+
+      /**
+       * Apply to routers with given {@link Method}, all methods are included if not set.
+       *
+       * @param method {@link Method}
+       * @return this object for further chaining
+       */
+      public Builder method(Method method) {
+        methods.add(Utils.checkNotNull(method, "method == null"));
+        return this;
+      }
+
+      /**
+       * Apply to routers whose target starts with given prefix, such as {@code demo://auth/} for
+       * scheme url or a package for page names. All targets are included if not set.
+       *
+       * @param prefix prefix of target
+       * @return this object for further chaining
+       */
+      public Builder targetPrefix(String prefix) {
+        targetPrefixes.add(Utils.checkNotNull(prefix, "prefix == null"));
+        return this;
+      }
+
+      public Scope build() {
+        return new Scope(this);
+      }
+    }
+  }
 }
@@ -16,27 +16,65 @@
 
 package com.anbillon.routine;
 
-import java.util.List;
-
 /**
- * A concrete interceptor chain that carries the entire interceptor chain.
+ * A concrete interceptor chain that carries the entire interceptor chain. One chain is created for
+ * each call and moves a cursor through the interceptors, the state of each interceptor is kept in
+ * preallocated frames instead of a new chain for each hop. The chain passed to an interceptor is
+ * only valid until its {@link Interceptor#intercept(Chain)} returns.
  *
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 final class InterceptorChain implements Interceptor.Chain {
-  private final List<Interceptor> interceptors;
-  private final Router router;
-  private final int index;
-  private int calls;
+  private final Interceptor[] interceptors;
+  private final Router origin;
+  private final RouterCall<?> call;
+  /* null if there's no event listener for the call */
+  private final EventListener eventListener;
+  /* 0 if the call has no timeout */
+  private final long timeoutNanos;
+  private final long deadlineNanos;
+  /* router passed to each interceptor */
+  private final Router[] routers;
+  /* number of times each interceptor has been called by the previous one */
+  private final int[] calls;
+  /* index of next interceptor to call */
+  private int index;
+  /* innermost running interceptor, read by the waiting thread on timeout */
+  private volatile Interceptor running;
+
+  InterceptorChain(Interceptor[] interceptors, Router origin) {
+    this(interceptors, origin, null, null, 0);
+  }
 
-  InterceptorChain(List<Interceptor> interceptors, int index, Router router) {
+  InterceptorChain(Interceptor[] interceptors, Router origin, RouterCall<?> call,
+      EventListener eventListener, long timeoutNanos) {
     this.interceptors = interceptors;
-    this.index = index;
-    this.router = router;
+    this.origin = origin;
+    this.call = call;
+    this.eventListener = eventListener;
+    this.timeoutNanos = timeoutNanos;
+    this.deadlineNanos = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+    this.routers = new Router[interceptors.length];
+    this.calls = new int[interceptors.length];
   }
 
   @Override public Router router() {
-    return router;
+    return index == 0 ? origin : routers[index - 1];
+  }
+
+  RouterCall<?> call() {
+    return call;
+  }
+
+  EventListener eventListener() {
+    return eventListener;
+  }
+
+  /**
+   * The interceptor which is running now, or null if the chain is not proceeding.
+   */
+  Interceptor running() {
+    return running;
   }
 
   @Override public Router proceed(Router router) throws RoutineException {
@@ -44,17 +82,46 @@ final class InterceptorChain implements Interceptor.Chain {
       throw new IllegalArgumentException("Router in interceptor chain must not be null.");
     }
 
-    if (index >= interceptors.size()) throw new AssertionError();
+    int current = index;
+    if (current >= interceptors.length) throw new AssertionError();
+    if (timeoutNanos > 0 && System.nanoTime() - deadlineNanos > 0) {
+      /* the previous interceptor used up the time, stop the rest of chain */
+      throw new RoutineTimeoutException(current > 0 ? interceptors[current - 1] : null,
+          timeoutNanos);
+    }
 
-    calls++;
+    calls[current]++;
+    routers[current] = router;
+    int next = current + 1;
+    if (next < calls.length) {
+      calls[next] = 0;
+    }
 
     /* call the next interceptor in the chain */
-    InterceptorChain next = new InterceptorChain(interceptors, index + 1, router);
-    Interceptor interceptor = interceptors.get(index);
-    Router result = interceptor.intercept(next);
+    Interceptor interceptor = interceptors[current];
+    Router result;
+    index = next;
+    if (eventListener != null) {
+      eventListener.interceptorStart(call, interceptor);
+    }
+    if (timeoutNanos > 0) {
+      running = interceptor;
+    }
+    try {
+      result = interceptor.intercept(this);
+    } finally {
+      index = current;
+      if (timeoutNanos > 0) {
+        running = current > 0 ? interceptors[current - 1] : null;
+      }
+      /* end the interceptor even if it threw, so every start has its end */
+      if (eventListener != null) {
+        eventListener.interceptorEnd(call, interceptor);
+      }
+    }
 
     /* confirm that the next interceptor made its required call to chain.proceed() */
-    if (index + 1 < interceptors.size() && next.calls != 1) {
+    if (next < interceptors.length && calls[next] != 1) {
       throw new IllegalStateException(
           "Routine interceptor " + interceptor + " must call proceed() exactly once.");
     }
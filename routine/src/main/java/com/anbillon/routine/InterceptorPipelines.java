@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Full stacks of interceptors composed once for each {@link Method}. Interceptors scoped by
+ * target prefixes are indexed by method in a character trie of their prefixes, so matching a
+ * router costs the length of its target rather than the number of scopes, and the pipeline of each
+ * combination of matched prefixes is composed once and cached.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class InterceptorPipelines {
+  /* matched prefixes are kept in a bit mask, more scoped interceptors are not cached */
+  private static final int MAX_CACHED_PREFIXES = 64;
+
+  private final Interceptor bridgeInterceptor;
+  private final Interceptor filtersInterceptor;
+  private final Interceptor realInterceptor;
+  private final List<Interceptor> interceptors;
+  private final List<Interceptor.Scope> scopes;
+  /* pipeline of each method when no target prefix matches */
+  private final Interceptor[][] basePipelines;
+  /* pipeline of each method without user interceptors */
+  private final Interceptor[][] builtInPipelines;
+  /* interceptors scoped by target prefixes of each method, and a trie of their prefixes */
+  private final int[][] prefixedIndexes;
+  private final PrefixNode[] prefixTries;
+  private final MaskedPipelines[] prefixedPipelines;
+
+  InterceptorPipelines(Routine routine, List<Interceptor> interceptors,
+      List<Interceptor.Scope> scopes) {
+    this.bridgeInterceptor = new BridgeInterceptor();
+    this.filtersInterceptor = new FiltersInterceptor(routine);
+    this.realInterceptor = new RealInterceptor();
+    this.interceptors = interceptors;
+    this.scopes = scopes;
+
+    Method[] methods = Method.values();
+    this.basePipelines = new Interceptor[methods.length][];
+    this.builtInPipelines = new Interceptor[methods.length][];
+    this.prefixedIndexes = new int[methods.length][];
+    this.prefixTries = new PrefixNode[methods.length];
+    this.prefixedPipelines = new MaskedPipelines[methods.length];
+    for (Method method : methods) {
+      List<Integer> indexes = new ArrayList<>();
+      for (int i = 0; i < scopes.size(); i++) {
+        Interceptor.Scope scope = scopes.get(i);
+        if (scope != null && scope.targetPrefixes.length > 0 && scope.matchesMethod(method)) {
+          indexes.add(i);
+        }
+      }
+
+      int[] prefixed = new int[indexes.size()];
+      for (int i = 0; i < prefixed.length; i++) {
+        prefixed[i] = indexes.get(i);
+      }
+      prefixedIndexes[method.ordinal()] = prefixed;
+      PrefixNode trie = new PrefixNode();
+      for (int i = 0; i < prefixed.length; i++) {
+        for (String prefix : scopes.get(prefixed[i]).targetPrefixes) {
+          trie.insert(prefix, i);
+        }
+      }
+      prefixTries[method.ordinal()] = trie;
+      prefixedPipelines[method.ordinal()] = new MaskedPipelines();
+      basePipelines[method.ordinal()] = compose(method, prefixed, 0);
+      builtInPipelines[method.ordinal()] = compose(method, null);
+    }
+  }
+
+  /**
+   * Get the pipeline of given router. Method and target of a router never change in interceptors,
+   * so the pipeline is chosen by the origin router.
+   *
+   * @param router origin {@link Router}
+   * @return full stack of interceptors
+   */
+  Interceptor[] get(Router router) {
+    int ordinal = router.method().ordinal();
+    int[] prefixed = prefixedIndexes[ordinal];
+    if (prefixed.length == 0) {
+      return basePipelines[ordinal];
+    }
+
+    String target = router.target();
+    if (target == null) {
+      return basePipelines[ordinal];
+    }
+
+    PrefixNode trie = prefixTries[ordinal];
+    if (prefixed.length > MAX_CACHED_PREFIXES) {
+      boolean[] matched = new boolean[interceptors.size()];
+      return trie.match(target, prefixed, matched) ? compose(router.method(), matched)
+          : basePipelines[ordinal];
+    }
+
+    long mask = trie.mask(target);
+    if (mask == 0) {
+      return basePipelines[ordinal];
+    }
+
+    MaskedPipelines pipelines = prefixedPipelines[ordinal];
+    Interceptor[] pipeline = pipelines.get(mask);
+    if (pipeline == null) {
+      pipeline = pipelines.put(mask, compose(router.method(), prefixed, mask));
+    }
+    return pipeline;
+  }
+
+  /**
+   * Get the pipeline of given method with built-in interceptors only, which resolves the intent
+   * of a router without user interceptors.
+   */
+  Interceptor[] builtIn(Method method) {
+    return builtInPipelines[method.ordinal()];
+  }
+
+  private Interceptor[] compose(Method method, int[] prefixed, long mask) {
+    boolean[] matched = new boolean[interceptors.size()];
+    for (int i = 0; i < prefixed.length; i++) {
+      matched[prefixed[i]] = (mask & (1L << i)) != 0;
+    }
+    return compose(method, matched);
+  }
+
+  /**
+   * Compose the pipeline of given method, scoped interceptors with target prefixes are only
+   * included if they are matched. Interceptors keep the order they were added in. User
+   * interceptors are left out if {@code matched} is null.
+   */
+  private Interceptor[] compose(Method method, boolean[] matched) {
+    List<Interceptor> pipeline = new ArrayList<>();
+    pipeline.add(bridgeInterceptor);
+    /* filters only match scheme urls */
+    if (method == Method.SCHEME_URL) {
+      pipeline.add(filtersInterceptor);
+    }
+    for (int i = 0; matched != null && i < interceptors.size(); i++) {
+      Interceptor.Scope scope = scopes.get(i);
+      if (scope == null || scope.matchesMethod(method) && (scope.targetPrefixes.length == 0
+          || matched[i])) {
+        pipeline.add(interceptors.get(i));
+      }
+    }
+    pipeline.add(realInterceptor);
+
+    return pipeline.toArray(new Interceptor[pipeline.size()]);
+  }
+
+  /**
+   * Pipelines keyed by the bit mask of matched prefixes, in sorted arrays like {@code
+   * LongSparseArray} so a lookup never boxes the mask. The arrays are copied on write, since only
+   * a few combinations of prefixes are ever matched.
+   */
+  private static final class MaskedPipelines {
+    private volatile Entries entries = new Entries(new long[0], new Interceptor[0][]);
+
+    Interceptor[] get(long mask) {
+      Entries current = entries;
+      int index = Arrays.binarySearch(current.masks, mask);
+      return index >= 0 ? current.pipelines[index] : null;
+    }
+
+    /**
+     * Put the pipeline of given mask if absent.
+     *
+     * @return the pipeline of given mask
+     */
+    synchronized Interceptor[] put(long mask, Interceptor[] pipeline) {
+      Entries current = entries;
+      int index = Arrays.binarySearch(current.masks, mask);
+      if (index >= 0) {
+        return current.pipelines[index];
+      }
+
+      int insertion = -index - 1;
+      int size = current.masks.length;
+      long[] masks = new long[size + 1];
+      Interceptor[][] pipelines = new Interceptor[size + 1][];
+      System.arraycopy(current.masks, 0, masks, 0, insertion);
+      System.arraycopy(current.pipelines, 0, pipelines, 0, insertion);
+      masks[insertion] = mask;
+      pipelines[insertion] = pipeline;
+      System.arraycopy(current.masks, insertion, masks, insertion + 1, size - insertion);
+      System.arraycopy(current.pipelines, insertion, pipelines, insertion + 1, size - insertion);
+      entries = new Entries(masks, pipelines);
+      return pipeline;
+    }
+
+    private static final class Entries {
+      final long[] masks;
+      final Interceptor[][] pipelines;
+
+      Entries(long[] masks, Interceptor[][] pipelines) {
+        this.masks = masks;
+        this.pipelines = pipelines;
+      }
+    }
+  }
+
+  /**
+   * A node of the character trie of target prefixes. Each node keeps the positions, in the scoped
+   * interceptors of its method, of the prefixes which end at this node.
+   */
+  private static final class PrefixNode {
+    private char[] labels = new char[0];
+    private PrefixNode[] children = new PrefixNode[0];
+    private int[] ends = new int[0];
+
+    void insert(String prefix, int position) {
+      PrefixNode node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        node = node.childOrCreate(prefix.charAt(i));
+      }
+      node.ends = Arrays.copyOf(node.ends, node.ends.length + 1);
+      node.ends[node.ends.length - 1] = position;
+    }
+
+    /**
+     * Returns the bit mask of positions whose prefixes start the target.
+     */
+    long mask(String target) {
+      long mask = 0;
+      PrefixNode node = this;
+      for (int i = 0; node != null; i++) {
+        for (int position : node.ends) {
+          mask |= 1L << position;
+        }
+        node = i < target.length() ? node.child(target.charAt(i)) : null;
+      }
+      return mask;
+    }
+
+    /**
+     * Mark the interceptors whose prefixes start the target.
+     *
+     * @return true if any interceptor is marked
+     */
+    boolean match(String target, int[] prefixed, boolean[] matched) {
+      boolean any = false;
+      PrefixNode node = this;
+      for (int i = 0; node != null; i++) {
+        for (int position : node.ends) {
+          matched[prefixed[position]] = true;
+          any = true;
+        }
+        node = i < target.length() ? node.child(target.charAt(i)) : null;
+      }
+      return any;
+    }
+
+    private PrefixNode child(char label) {
+      int index = Arrays.binarySearch(labels, label);
+      return index >= 0 ? children[index] : null;
+    }
+
+    private PrefixNode childOrCreate(char label) {
+      int index = Arrays.binarySearch(labels, label);
+      if (index >= 0) {
+        return children[index];
+      }
+
+      /* keep labels sorted for binary search */
+      int insertion = -index - 1;
+      PrefixNode child = new PrefixNode();
+      char[] newLabels = new char[labels.length + 1];
+      PrefixNode[] newChildren = new PrefixNode[children.length + 1];
+      System.arraycopy(labels, 0, newLabels, 0, insertion);
+      System.arraycopy(children, 0, newChildren, 0, insertion);
+      newLabels[insertion] = label;
+      newChildren[insertion] = child;
+      System.arraycopy(labels, insertion, newLabels, insertion + 1, labels.length - insertion);
+      System.arraycopy(children, insertion, newChildren, insertion + 1,
+          children.length - insertion);
+      labels = newLabels;
+      children = newChildren;
+      return child;
+    }
+  }
+}
@@ -18,25 +18,48 @@ package com.anbillon.routine;
 
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.support.annotation.Nullable;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
-import java.util.Map;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
+import static com.anbillon.routine.Utils.checkNotNull;
 import static com.anbillon.routine.Utils.resolveActivityInfo;
 import static com.anbillon.routine.Utils.resolveSchemeUrl;
 
 /**
  * A matcher to match scheme url. Instances of this class are immutable.
  *
+ * <p> Routes are indexed in a trie of scheme, host and path segments. A scheme url matches the
+ * routes which are a segment prefix of it, e.g. {@code demo://test/user} matches {@code
+ * demo://test/user/2?id=3} but not {@code demo://test/users}, and the longest route wins. So the
+ * cost of matching only depends on the length of scheme url, not the number of routes.
+ *
+ * <p> A path segment of route can be a placeholder such as {@code demo://shop/item/{id:long}}.
+ * The matched segment is put into the extras of intent with the name of placeholder, typed as
+ * {@code string} (default, url decoded), {@code int} or {@code long}. A literal segment is
+ * preferred over a placeholder, and a typed placeholder only matches a segment of its type within
+ * its range.
+ *
+ * <p> The trie is persistent, nodes are never changed once built. Adding a route to the builder
+ * of {@link #newBuilder()} copies only the nodes on its path and shares the rest with this
+ * matcher, so filters can add routes one by one without copying all routes.
+ *
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 public final class Matcher {
-  private final Map<String, Set<Class<?>>> pagesMap;
+  private final Node root;
+  private final List<RouteTable> tables;
 
   private Matcher(Builder builder) {
-    this.pagesMap = builder.pagesMap;
+    this.root = builder.root;
+    this.tables = Utils.immutableList(builder.tables);
   }
 
   /**
@@ -46,19 +69,31 @@ public final class Matcher {
    * @return {@link Intent} if matched, otherwise return null.
    */
   @Nullable public Intent match(Context context, String schemeUrl) {
-    Set<Class<?>> pages = null;
-    for (String key : pagesMap.keySet()) {
-      if (schemeUrl.contains(key)) {
-        pages = pagesMap.get(key);
-        break;
-      }
+    return match(context, schemeUrl, null);
+  }
+
+  /**
+   * Match an {@link Intent} with given scheme url, the resolution of pages is cached in {@code
+   * cache} if it's not null.
+   */
+  @Nullable Intent match(Context context, String schemeUrl, ResolutionCache cache) {
+    List<String> segments = segments(schemeUrl);
+    List<Node> candidates = candidates(segments);
+    if (candidates.isEmpty()) {
+      return null;
     }
 
-    if (pages != null && !pages.isEmpty()) {
-      Intent intent = new Intent();
-      for (Class<?> page : pages) {
+    /* try the longest route first, fall back to shorter ones if no page is available */
+    Intent intent = new Intent();
+    for (Node route : candidates) {
+      for (Class<?> page : route.pages) {
         intent.setClass(context, page);
-        if (resolveActivityInfo(context, intent) != null) {
+        boolean resolved = cache != null ? cache.resolve(context, intent, page)
+            : resolveActivityInfo(context, intent) != null;
+        if (resolved) {
+          for (Param param : route.params) {
+            param.putExtra(intent, segments.get(param.index));
+          }
           return intent;
         }
       }
@@ -67,30 +102,331 @@ public final class Matcher {
     return null;
   }
 
+  /**
+   * Find all routes which are a prefix of given scheme url.
+   *
+   * @param schemeUrl scheme url
+   * @return matched routes, from the longest route to the shortest one
+   */
+  List<Node> candidates(String schemeUrl) {
+    return candidates(segments(schemeUrl));
+  }
+
+  private List<Node> candidates(List<String> segments) {
+    List<Node> candidates = new ArrayList<>(2);
+    walk(root, segments, 0, candidates);
+    if (tables.isEmpty()) {
+      return candidates;
+    }
+
+    for (RouteTable table : tables) {
+      table.candidates(segments, candidates);
+    }
+    /* stable, so routes added by builder win over routes in tables of the same length */
+    Collections.sort(candidates, LONGEST_FIRST);
+    return candidates;
+  }
+
+  /**
+   * Walk down the trie along segments, a literal child is tried before placeholders. The routes
+   * on the deepest path are added into {@code routes}, from the longest one to the shortest one.
+   *
+   * @return true if any route is found from this node
+   */
+  private static boolean walk(Node node, List<String> segments, int index, List<Node> routes) {
+    boolean found = false;
+    if (index < segments.size()) {
+      String segment = segments.get(index);
+      Node child = node.children.get(segment);
+      found = child != null && walk(child, segments, index + 1, routes);
+      if (!found && node.placeholders != null) {
+        for (ParamType type : ParamType.VALUES) {
+          Node placeholder = node.placeholders[type.ordinal()];
+          if (placeholder != null && type.accepts(segment)
+              && walk(placeholder, segments, index + 1, routes)) {
+            found = true;
+            break;
+          }
+        }
+      }
+    }
+
+    if (node.pages != null && !node.pages.isEmpty()) {
+      routes.add(node);
+      return true;
+    }
+    return found;
+  }
+
+  private static final Comparator<Node> LONGEST_FIRST = new Comparator<Node>() {
+    @Override public int compare(Node o1, Node o2) {
+      return o2.depth < o1.depth ? -1 : (o2.depth == o1.depth ? 0 : 1);
+    }
+  };
+
   public Builder newBuilder() {
     return new Builder(this);
   }
 
+  /**
+   * Split a scheme url into segments of trie: scheme, host and each non-empty path segment. Scheme
+   * and host are case insensitive, query and fragment are ignored.
+   */
+  static List<String> segments(String schemeUrl) {
+    int end = schemeUrl.length();
+    int query = schemeUrl.indexOf('?');
+    if (query >= 0) {
+      end = query;
+    }
+    int fragment = schemeUrl.indexOf('#');
+    if (fragment >= 0 && fragment < end) {
+      end = fragment;
+    }
+
+    List<String> segments = new ArrayList<>();
+    int start = 0;
+    int schemeEnd = schemeUrl.indexOf("://");
+    if (schemeEnd > 0 && schemeEnd < end) {
+      /* the separator is kept in scheme, so it never equals to a path segment */
+      segments.add(schemeUrl.substring(0, schemeEnd + 1).toLowerCase(Locale.US));
+      start = schemeEnd + 3;
+      int hostEnd = schemeUrl.indexOf('/', start);
+      if (hostEnd < 0 || hostEnd > end) {
+        hostEnd = end;
+      }
+      if (hostEnd > start) {
+        segments.add(schemeUrl.substring(start, hostEnd).toLowerCase(Locale.US));
+      }
+      start = hostEnd;
+    }
+
+    while (start < end) {
+      int segmentEnd = schemeUrl.indexOf('/', start);
+      if (segmentEnd < 0 || segmentEnd > end) {
+        segmentEnd = end;
+      }
+      if (segmentEnd > start) {
+        segments.add(schemeUrl.substring(start, segmentEnd));
+      }
+      start = segmentEnd + 1;
+    }
+
+    return segments;
+  }
+
+  /**
+   * A node of trie, instances of this class are immutable.
+   */
+  static final class Node {
+    static final Node ROOT = new Node(0, PersistentMap.<String, Node>empty(), null, null, null);
+
+    /* number of segments of the route */
+    final int depth;
+    final PersistentMap<String, Node> children;
+    /* child for each type of placeholder indexed by ordinal of ParamType, or null if none */
+    final Node[] placeholders;
+    /* null if no route ends at this node */
+    final Set<Class<?>> pages;
+    final Param[] params;
+
+    Node(int depth, PersistentMap<String, Node> children, Node[] placeholders,
+        Set<Class<?>> pages, Param[] params) {
+      this.depth = depth;
+      this.children = children;
+      this.placeholders = placeholders;
+      this.pages = pages;
+      this.params = params;
+    }
+
+    Node(int depth, Set<Class<?>> pages, Param[] params) {
+      this(depth, PersistentMap.<String, Node>empty(), null, pages, params);
+    }
+
+    /**
+     * Returns a node with the route added below it, this node is not changed.
+     *
+     * @param segments segments of route
+     * @param types type of placeholder for each segment, null for a literal segment
+     * @param params placeholders of route
+     * @param page page of route
+     */
+    Node plus(List<String> segments, ParamType[] types, Param[] params, Class<?> page) {
+      if (depth == segments.size()) {
+        if (pages == null) {
+          return new Node(depth, children, placeholders, Collections.<Class<?>>singleton(page),
+              params);
+        }
+        if (!Arrays.equals(this.params, params)) {
+          throw new IllegalArgumentException(
+              "Route " + segments + " conflicts with another route of different placeholders.");
+        }
+        if (pages.contains(page)) {
+          return this;
+        }
+        /* routes which only differ in case of scheme or host share the node */
+        Set<Class<?>> newPages = new LinkedHashSet<>(pages);
+        newPages.add(page);
+        return new Node(depth, children, placeholders, Collections.unmodifiableSet(newPages),
+            this.params);
+      }
+
+      ParamType type = types[depth];
+      if (type == null) {
+        String segment = segments.get(depth);
+        Node child = children.get(segment);
+        if (child == null) {
+          child = new Node(depth + 1, null, null);
+        }
+        return new Node(depth, children.plus(segment, child.plus(segments, types, params, page)),
+            placeholders, pages, this.params);
+      }
+
+      Node[] newPlaceholders =
+          placeholders == null ? new Node[ParamType.VALUES.length] : placeholders.clone();
+      Node child = newPlaceholders[type.ordinal()];
+      if (child == null) {
+        child = new Node(depth + 1, null, null);
+      }
+      newPlaceholders[type.ordinal()] = child.plus(segments, types, params, page);
+      return new Node(depth, children, newPlaceholders, pages, this.params);
+    }
+  }
+
+  enum ParamType {
+    /* typed placeholders are tried first since they are more specific */
+    INT, LONG, STRING;
+
+    static final ParamType[] VALUES = values();
+
+    boolean accepts(String segment) {
+      if (this == STRING) {
+        return true;
+      }
+
+      int length = segment.length();
+      boolean negative = segment.charAt(0) == '-';
+      int start = negative ? 1 : 0;
+      if (length == start) {
+        return false;
+      }
+
+      /* decimal digits only, accumulated negatively as Long.parseLong to check overflow */
+      long max = this == INT ? Integer.MAX_VALUE : Long.MAX_VALUE;
+      long limit = negative ? -max - 1 : -max;
+      long multiplyLimit = limit / 10;
+      long result = 0;
+      for (int i = start; i < length; i++) {
+        int digit = segment.charAt(i) - '0';
+        if (digit < 0 || digit > 9 || result < multiplyLimit) {
+          return false;
+        }
+        result *= 10;
+        if (result < limit + digit) {
+          return false;
+        }
+        result -= digit;
+      }
+      return true;
+    }
+  }
+
+  static final class Param {
+    final int index;
+    final String name;
+    final ParamType type;
+
+    Param(int index, String name, ParamType type) {
+      this.index = index;
+      this.name = name;
+      this.type = type;
+    }
+
+    /**
+     * Parse a placeholder like {@code {id}} or {@code {id:int}}.
+     *
+     * @return the param or null if the segment is not a placeholder
+     */
+    @Nullable static Param parse(int index, String segment) {
+      int length = segment.length();
+      if (length < 2 || segment.charAt(0) != '{' || segment.charAt(length - 1) != '}') {
+        return null;
+      }
+
+      String name = segment.substring(1, length - 1);
+      ParamType type = ParamType.STRING;
+      int colon = name.indexOf(':');
+      if (colon >= 0) {
+        String typeName = name.substring(colon + 1);
+        name = name.substring(0, colon);
+        if ("int".equals(typeName)) {
+          type = ParamType.INT;
+        } else if ("long".equals(typeName)) {
+          type = ParamType.LONG;
+        } else if (!"string".equals(typeName)) {
+          throw new IllegalArgumentException("Unknown type of placeholder: " + segment);
+        }
+      }
+      if (name.isEmpty()) {
+        throw new IllegalArgumentException("Placeholder must have a name: " + segment);
+      }
+
+      return new Param(index, name, type);
+    }
+
+    void putExtra(Intent intent, String value) {
+      switch (type) {
+        case INT:
+          intent.putExtra(name, Integer.parseInt(value));
+          break;
+        case LONG:
+          intent.putExtra(name, Long.parseLong(value));
+          break;
+        default:
+          /* only strings can be escaped, typed segments are decimal digits */
+          intent.putExtra(name, Uri.decode(value));
+          break;
+      }
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof Param)) {
+        return false;
+      }
+      Param other = (Param) o;
+      return index == other.index && name.equals(other.name) && type == other.type;
+    }
+
+    @Override public int hashCode() {
+      return 31 * (31 * index + name.hashCode()) + type.hashCode();
+    }
+  }
+
   public static final class Builder {
-    private Map<String, Set<Class<?>>> pagesMap = new LinkedHashMap<>();
+    private Node root = Node.ROOT;
+    private List<RouteTable> tables = new ArrayList<>();
 
     Builder() {
     }
 
     Builder(Matcher matcher) {
-      this.pagesMap = matcher.pagesMap;
+      /* nodes are immutable, so the trie is shared instead of copied */
+      this.root = matcher.root;
+      this.tables.addAll(matcher.tables);
     }
 
     public Builder addPage(String schemeUrl, Class<?> page) {
-      String realSchemeUrl = resolveSchemeUrl(schemeUrl);
-      Set<Class<?>> pages = pagesMap.get(realSchemeUrl);
-      if (pages != null) {
-        pages.add(page);
-      } else {
-        LinkedHashSet<Class<?>> newPages = new LinkedHashSet<>();
-        newPages.add(page);
-        pagesMap.put(schemeUrl, newPages);
+      checkNotNull(page, "page == null");
+      List<String> segments = segments(resolveSchemeUrl(schemeUrl));
+      ParamType[] types = new ParamType[segments.size()];
+      List<Param> params = new ArrayList<>();
+      for (int i = 0; i < segments.size(); i++) {
+        Param param = Param.parse(i, segments.get(i));
+        if (param != null) {
+          types[i] = param.type;
+          params.add(param);
+        }
       }
+      root = root.plus(segments, types, params.toArray(new Param[params.size()]), page);
 
       return this;
     }
@@ -104,6 +440,19 @@ public final class Matcher {
       return this;
     }
 
+    /**
+     * Add the routes of a {@link RouteTable}, the table is not copied into heap and its pages are
+     * only loaded when matched. A route added by {@link #addPage(String, Class)} wins over a route
+     * in table of the same length.
+     *
+     * @param table {@link RouteTable}
+     * @return this object for further chaining
+     */
+    public Builder addRouteTable(RouteTable table) {
+      tables.add(checkNotNull(table, "table == null"));
+      return this;
+    }
+
     public Matcher build() {
       return new Matcher(this);
     }
@@ -21,7 +21,7 @@ package com.anbillon.routine;
  *
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
-enum Method {
+public enum Method {
   SCHEME_URL,
   PAGE_NAME,
   PAGE,
@@ -116,7 +116,7 @@ abstract class MethodHandler<T> {
   }
 
   static final class Anim extends MethodHandler<Integer> {
-    private final Integer exit;
+    final Integer exit;
 
     Anim(Integer enter, Integer exit) {
       super(enter);
@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * A persisted cache of parsed router method metadata. Each router interface is stored in a compact
+ * binary file keyed by app version and a hash of the interface signatures, so the next cold start
+ * can build router methods without annotation reflection. Any unreadable or mismatched file is
+ * discarded and methods fall back to reflection. Methods with annotations other than the built-in
+ * ones are never persisted, since adapters are chosen by method annotations.
+ * <p>
+ * File format: magic, format version, app version, interface hash, record count, then one record
+ * per method (signature and encoded metadata), followed by a CRC32 of everything before it.
+ * </p>
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class MethodMetadataCache {
+  private static final int MAGIC = 0x52544e4d;
+  private static final int FORMAT_VERSION = 3;
+
+  private static final int HANDLER_SCHEME_URL = 1;
+  private static final int HANDLER_PAGE_NAME = 2;
+  private static final int HANDLER_PAGE = 3;
+  private static final int HANDLER_ACTION = 4;
+  private static final int HANDLER_FLAGS = 5;
+  private static final int HANDLER_REQUEST_CODE = 6;
+  private static final int HANDLER_ANIM = 7;
+
+  private static final int PARAMETER_CALLER = 1;
+  private static final int PARAMETER_SCHEME_URL = 2;
+  private static final int PARAMETER_PAGE_NAME = 3;
+  private static final int PARAMETER_ACTION = 4;
+  private static final int PARAMETER_REQUEST_CODE = 5;
+  private static final int PARAMETER_EXTRA = 6;
+
+  private static final int TYPE_CLASS = 1;
+  private static final int TYPE_PARAMETERIZED = 2;
+
+  private final File directory;
+  private final String appVersion;
+  private final ConcurrentMap<String, Metadata> metadataMap = new ConcurrentHashMap<>();
+  private volatile Executor writeExecutor;
+
+  MethodMetadataCache(File directory, String appVersion) {
+    this(directory, appVersion, null);
+  }
+
+  /**
+   * Create a cache which writes files on given executor, a single daemon thread is created when
+   * first written if it's null.
+   */
+  MethodMetadataCache(File directory, String appVersion, Executor writeExecutor) {
+    this.directory = directory;
+    this.appVersion = appVersion;
+    this.writeExecutor = writeExecutor;
+  }
+
+  /**
+   * Get the {@link Metadata} of given router, load it origin file if not loaded yet.
+   *
+   * @param router router interface
+   * @return {@link Metadata}, never null
+   */
+  Metadata get(Class<?> router) {
+    Metadata metadata = metadataMap.get(router.getName());
+    if (metadata == null) {
+      Metadata newMetadata = new Metadata(router);
+      metadata = metadataMap.putIfAbsent(router.getName(), newMetadata);
+      if (metadata == null) {
+        metadata = newMetadata;
+      }
+    }
+
+    /* only callers of the same router wait for the file to be loaded */
+    metadata.ensureLoaded();
+    return metadata;
+  }
+
+  private Executor writeExecutor() {
+    Executor executor = writeExecutor;
+    if (executor == null) {
+      synchronized (this) {
+        executor = writeExecutor;
+        if (executor == null) {
+          executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "Routine Metadata Writer");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+          writeExecutor = executor;
+        }
+      }
+    }
+
+    return executor;
+  }
+
+  /**
+   * Metadata of all the methods of one router interface.
+   */
+  final class Metadata {
+    private final Class<?> router;
+    private final File file;
+    private final int interfaceHash;
+    private final Map<String, MethodSpec> specs = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> records = new ConcurrentHashMap<>();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private volatile boolean loaded;
+
+    Metadata(Class<?> router) {
+      this.router = router;
+      this.file = new File(directory, router.getName() + ".routine");
+      this.interfaceHash = interfaceHash(router);
+    }
+
+    /**
+     * Get the persisted {@link MethodSpec} of given method.
+     *
+     * @param method {@link Method}
+     * @return {@link MethodSpec}, or null if not persisted
+     */
+    MethodSpec get(Method method) {
+      return specs.get(signature(method));
+    }
+
+    /**
+     * Record a {@link RouterMethod} parsed by reflection, it will be persisted in background.
+     *
+     * @param method {@link Method}
+     * @param routerMethod parsed {@link RouterMethod}
+     */
+    void put(Method method, RouterMethod<?> routerMethod) {
+      String signature = signature(method);
+      if (records.containsKey(signature) || !hasBuiltInAnnotationsOnly(method)) {
+        return;
+      }
+
+      try {
+        records.put(signature, encode(method.getGenericReturnType(), routerMethod));
+      } catch (IOException ignore) {
+        /* unsupported metadata, this method will always use reflection */
+        return;
+      }
+
+      if (writeScheduled.compareAndSet(false, true)) {
+        writeExecutor().execute(new Runnable() {
+          @Override public void run() {
+            writeScheduled.set(false);
+            write();
+          }
+        });
+      }
+    }
+
+    void ensureLoaded() {
+      if (loaded) {
+        return;
+      }
+
+      synchronized (this) {
+        if (!loaded) {
+          load();
+          loaded = true;
+        }
+      }
+    }
+
+    private void load() {
+      if (!file.exists()) {
+        return;
+      }
+
+      try {
+        byte[] bytes = readFully(file);
+        if (bytes.length < 8) {
+          throw new EOFException();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        DataInputStream trailer =
+            new DataInputStream(new ByteArrayInputStream(bytes, bytes.length - 8, 8));
+        if (trailer.readLong() != crc.getValue()) {
+          throw new IOException("Checksum mismatch");
+        }
+
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (in.readInt() != MAGIC
+            || in.readInt() != FORMAT_VERSION
+            || !appVersion.equals(in.readUTF())
+            || in.readInt() != interfaceHash) {
+          /* stale file, it will be rewritten when methods are parsed */
+          file.delete();
+          return;
+        }
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          String signature = in.readUTF();
+          byte[] record = new byte[in.readInt()];
+          in.readFully(record);
+          MethodSpec spec = decode(router, signature, record);
+          specs.put(signature, spec);
+          records.put(signature, record);
+        }
+      } catch (IOException | RuntimeException | ClassNotFoundException e) {
+        /* corrupted file, fall back to reflection */
+        specs.clear();
+        records.clear();
+        file.delete();
+      }
+    }
+
+    void write() {
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(appVersion);
+        out.writeInt(interfaceHash);
+        Object[] entries = records.entrySet().toArray();
+        out.writeInt(entries.length);
+        for (Object object : entries) {
+          @SuppressWarnings("unchecked") Map.Entry<String, byte[]> entry =
+              (Map.Entry<String, byte[]>) object;
+          out.writeUTF(entry.getKey());
+          out.writeInt(entry.getValue().length);
+          out.write(entry.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        /* write into a temporary file first, so a crash never leaves a partial file */
+        if (!directory.exists() && !directory.mkdirs()) {
+          return;
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        OutputStream output = new FileOutputStream(temp);
+        try {
+          bytes.writeTo(output);
+        } finally {
+          output.close();
+        }
+        if (!temp.renameTo(file)) {
+          temp.delete();
+        }
+      } catch (IOException ignore) {
+      }
+    }
+  }
+
+  /**
+   * Returns true if all annotations of given method are built-in ones, only such methods are
+   * persisted.
+   */
+  static boolean hasBuiltInAnnotationsOnly(Method method) {
+    for (Annotation annotation : method.getAnnotations()) {
+      if (!Routine.isBuiltInAnnotation(annotation)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static String signature(Method method) {
+    StringBuilder signature = new StringBuilder(method.getName()).append('(');
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (i > 0) {
+        signature.append(',');
+      }
+      signature.append(parameterTypes[i].getName());
+    }
+    return signature.append(')').toString();
+  }
+
+  private static int interfaceHash(Class<?> router) {
+    Method[] methods = Utils.routerMethods(router);
+    String[] signatures = new String[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      signatures[i] = methods[i].getReturnType().getName() + ' ' + signature(methods[i]);
+    }
+
+    /* declared methods are not in a stable order */
+    Arrays.sort(signatures);
+    return Arrays.hashCode(signatures);
+  }
+
+  static byte[] encode(Type returnType, RouterMethod<?> routerMethod) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    writeType(out, returnType);
+
+    out.writeInt(routerMethod.methodHandlers.length);
+    for (MethodHandler<?> handler : routerMethod.methodHandlers) {
+      if (handler instanceof MethodHandler.SchemeUrl) {
+        out.writeByte(HANDLER_SCHEME_URL);
+        out.writeUTF((String) handler.value);
+      } else if (handler instanceof MethodHandler.PageName) {
+        out.writeByte(HANDLER_PAGE_NAME);
+        out.writeUTF((String) handler.value);
+      } else if (handler instanceof MethodHandler.Page) {
+        out.writeByte(HANDLER_PAGE);
+        out.writeUTF(((Class<?>) handler.value).getName());
+      } else if (handler instanceof MethodHandler.Action) {
+        out.writeByte(HANDLER_ACTION);
+        out.writeUTF((String) handler.value);
+      } else if (handler instanceof MethodHandler.Flags) {
+        out.writeByte(HANDLER_FLAGS);
+        out.writeInt((Integer) handler.value);
+        out.writeBoolean(((MethodHandler.Flags) handler).set);
+      } else if (handler instanceof MethodHandler.RequestCode) {
+        out.writeByte(HANDLER_REQUEST_CODE);
+        out.writeInt((Integer) handler.value);
+      } else if (handler instanceof MethodHandler.Anim) {
+        out.writeByte(HANDLER_ANIM);
+        out.writeInt((Integer) handler.value);
+        out.writeInt(((MethodHandler.Anim) handler).exit);
+      } else {
+        throw new IOException("Unsupported method handler: " + handler);
+      }
+    }
+
+    out.writeInt(routerMethod.parameterHandlers.length);
+    for (ParameterHandler<?> handler : routerMethod.parameterHandlers) {
+      if (handler instanceof ParameterHandler.Caller) {
+        out.writeByte(PARAMETER_CALLER);
+      } else if (handler instanceof ParameterHandler.SchemeUrl) {
+        out.writeByte(PARAMETER_SCHEME_URL);
+      } else if (handler instanceof ParameterHandler.PageName) {
+        out.writeByte(PARAMETER_PAGE_NAME);
+      } else if (handler instanceof ParameterHandler.Action) {
+        out.writeByte(PARAMETER_ACTION);
+      } else if (handler instanceof ParameterHandler.RequestCode) {
+        out.writeByte(PARAMETER_REQUEST_CODE);
+      } else if (handler instanceof ParameterHandler.Extra) {
+        ParameterHandler.Extra<?> extra = (ParameterHandler.Extra<?>) handler;
+        out.writeByte(PARAMETER_EXTRA);
+        out.writeUTF(extra.name);
+        writeType(out, extra.type);
+      } else {
+        throw new IOException("Unsupported parameter handler: " + handler);
+      }
+    }
+
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  static MethodSpec decode(Class<?> router, String signature, byte[] record)
+      throws IOException, ClassNotFoundException {
+    ClassLoader classLoader = router.getClassLoader();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    MethodSpec.Builder builder =
+        new MethodSpec.Builder(router.getName() + "." + signature, readType(in, classLoader));
+
+    int methodCount = in.readInt();
+    for (int m = 0; m < methodCount; m++) {
+      int kind = in.readUnsignedByte();
+      switch (kind) {
+        case HANDLER_SCHEME_URL:
+          builder.schemeUrl(in.readUTF());
+          break;
+        case HANDLER_PAGE_NAME:
+          builder.pageName(in.readUTF());
+          break;
+        case HANDLER_PAGE:
+          builder.page(Class.forName(in.readUTF(), false, classLoader));
+          break;
+        case HANDLER_ACTION:
+          builder.action(in.readUTF());
+          break;
+        case HANDLER_FLAGS:
+          builder.flags(in.readInt(), in.readBoolean());
+          break;
+        case HANDLER_REQUEST_CODE:
+          builder.requestCode(in.readInt());
+          break;
+        case HANDLER_ANIM:
+          builder.anim(in.readInt(), in.readInt());
+          break;
+        default:
+          throw new IOException("Unknown method handler: " + kind);
+      }
+    }
+
+    int parameterCount = in.readInt();
+    for (int p = 0; p < parameterCount; p++) {
+      int kind = in.readUnsignedByte();
+      switch (kind) {
+        case PARAMETER_CALLER:
+          builder.callerParameter();
+          break;
+        case PARAMETER_SCHEME_URL:
+          builder.schemeUrlParameter();
+          break;
+        case PARAMETER_PAGE_NAME:
+          builder.pageNameParameter();
+          break;
+        case PARAMETER_ACTION:
+          builder.actionParameter();
+          break;
+        case PARAMETER_REQUEST_CODE:
+          builder.requestCodeParameter();
+          break;
+        case PARAMETER_EXTRA:
+          builder.extraParameter(in.readUTF(), readType(in, classLoader));
+          break;
+        default:
+          throw new IOException("Unknown parameter handler: " + kind);
+      }
+    }
+
+    if (in.read() != -1) {
+      throw new IOException("Unexpected trailing data");
+    }
+
+    return builder.build();
+  }
+
+  private static void writeType(DataOutputStream out, Type type) throws IOException {
+    if (type instanceof Class<?>) {
+      out.writeByte(TYPE_CLASS);
+      out.writeUTF(((Class<?>) type).getName());
+    } else if (type instanceof ParameterizedType) {
+      ParameterizedType parameterizedType = (ParameterizedType) type;
+      Type[] typeArguments = parameterizedType.getActualTypeArguments();
+      out.writeByte(TYPE_PARAMETERIZED);
+      out.writeUTF(Utils.getRawType(parameterizedType).getName());
+      out.writeInt(typeArguments.length);
+      for (Type typeArgument : typeArguments) {
+        writeType(out, typeArgument);
+      }
+    } else {
+      throw new IOException("Unsupported type: " + type);
+    }
+  }
+
+  private static Type readType(DataInputStream in, ClassLoader classLoader)
+      throws IOException, ClassNotFoundException {
+    int kind = in.readUnsignedByte();
+    switch (kind) {
+      case TYPE_CLASS:
+        return forName(in.readUTF(), classLoader);
+      case TYPE_PARAMETERIZED:
+        Class<?> rawType = forName(in.readUTF(), classLoader);
+        Type[] typeArguments = new Type[in.readInt()];
+        for (int i = 0; i < typeArguments.length; i++) {
+          typeArguments[i] = readType(in, classLoader);
+        }
+        return new Utils.ParameterizedTypeImpl(null, rawType, typeArguments);
+      default:
+        throw new IOException("Unknown type: " + kind);
+    }
+  }
+
+  private static Class<?> forName(String name, ClassLoader classLoader)
+      throws ClassNotFoundException {
+    switch (name) {
+      case "void":
+        return void.class;
+      case "boolean":
+        return boolean.class;
+      case "byte":
+        return byte.class;
+      case "char":
+        return char.class;
+      case "short":
+        return short.class;
+      case "int":
+        return int.class;
+      case "long":
+        return long.class;
+      case "float":
+        return float.class;
+      case "double":
+        return double.class;
+      default:
+        return Class.forName(name, false, classLoader);
+    }
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+      return bytes.toByteArray();
+    } finally {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.anbillon.routine.Utils.checkNotNull;
+
+/**
+ * A prebuilt description of one router method. Routers generated by {@code routine-compiler}
+ * describe their methods with this class so that no annotation reflection is needed at runtime.
+ * Instances of this class are immutable.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class MethodSpec {
+  final String name;
+  final Type returnType;
+  final MethodHandler<?>[] methodHandlers;
+  final ParameterHandler<?>[] parameterHandlers;
+  final int callerIndex;
+
+  private MethodSpec(Builder builder) {
+    this.name = builder.name;
+    this.returnType = builder.returnType;
+    this.methodHandlers = builder.methodHandlers.toArray(new MethodHandler<?>[0]);
+    this.parameterHandlers = builder.parameterHandlers.toArray(new ParameterHandler<?>[0]);
+    this.callerIndex = builder.callerIndex;
+  }
+
+  /**
+   * Returns a {@link java.lang.reflect.ParameterizedType} for {@code rawType} with the given type
+   * arguments, e.g. {@code ArrayList<String>} or {@code Observable<Boolean>}.
+   */
+  public static Type parameterizedType(Class<?> rawType, Type... typeArguments) {
+    return new Utils.ParameterizedTypeImpl(null, rawType, typeArguments);
+  }
+
+  public static final class Builder {
+    private final String name;
+    private final Type returnType;
+    private final List<MethodHandler<?>> methodHandlers = new ArrayList<>();
+    private final List<ParameterHandler<?>> parameterHandlers = new ArrayList<>();
+    private int callerIndex = -1;
+
+    /**
+     * @param name name of the method with its declaring class and parameter types, used in stats
+     * and error messages (e.g. com.example.Navigator.navigateToDemo(android.content.Context))
+     * @param returnType generic return type of the method
+     */
+    public Builder(String name, Type returnType) {
+      this.name = checkNotNull(name, "name == null");
+      this.returnType = checkNotNull(returnType, "returnType == null");
+    }
+
+    public Builder schemeUrl(String schemeUrl) {
+      methodHandlers.add(new MethodHandler.SchemeUrl(schemeUrl));
+      return this;
+    }
+
+    public Builder pageName(String pageName) {
+      methodHandlers.add(new MethodHandler.PageName(pageName));
+      return this;
+    }
+
+    public Builder page(Class<?> page) {
+      methodHandlers.add(new MethodHandler.Page(page));
+      return this;
+    }
+
+    public Builder action(String action) {
+      methodHandlers.add(new MethodHandler.Action(action));
+      return this;
+    }
+
+    public Builder flags(int flags, boolean set) {
+      methodHandlers.add(new MethodHandler.Flags(flags, set));
+      return this;
+    }
+
+    public Builder requestCode(int requestCode) {
+      methodHandlers.add(new MethodHandler.RequestCode(requestCode));
+      return this;
+    }
+
+    public Builder anim(int enter, int exit) {
+      methodHandlers.add(new MethodHandler.Anim(enter, exit));
+      return this;
+    }
+
+    public Builder callerParameter() {
+      if (callerIndex >= 0) {
+        throw new IllegalStateException("Multiple @Caller parameters found in " + name);
+      }
+
+      /* caller handler needs routine to locate resolver, it will be created when binding */
+      callerIndex = parameterHandlers.size();
+      parameterHandlers.add(null);
+      return this;
+    }
+
+    public Builder schemeUrlParameter() {
+      parameterHandlers.add(new ParameterHandler.SchemeUrl());
+      return this;
+    }
+
+    public Builder pageNameParameter() {
+      parameterHandlers.add(new ParameterHandler.PageName());
+      return this;
+    }
+
+    public Builder actionParameter() {
+      parameterHandlers.add(new ParameterHandler.Action());
+      return this;
+    }
+
+    public Builder requestCodeParameter() {
+      parameterHandlers.add(new ParameterHandler.RequestCode());
+      return this;
+    }
+
+    public Builder extraParameter(String name, Type type) {
+      parameterHandlers.add(new ParameterHandler.Extra<>(name, type));
+      return this;
+    }
+
+    public MethodSpec build() {
+      if (callerIndex < 0) {
+        throw new IllegalStateException("A router must contain one @Caller: " + name);
+      }
+
+      return new MethodSpec(this);
+    }
+  }
+}
@@ -82,8 +82,8 @@ abstract class ParameterHandler<T> {
   }
 
   static final class Extra<T> extends ParameterHandler<T> {
-    private final String name;
-    private final Type type;
+    final String name;
+    final Type type;
 
     public Extra(String name, Type type) {
       this.name = name;
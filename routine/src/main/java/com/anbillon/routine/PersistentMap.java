@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+/**
+ * An immutable hash map based on hash array mapped trie. Adding a key copies only the nodes on
+ * its path, O(log32 n), and the rest is shared with the origin map, so a map can be updated
+ * without copying all of its entries. Keys must not be null.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class PersistentMap<K, V> {
+  private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null);
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private final TrieNode root;
+
+  private PersistentMap(TrieNode root) {
+    this.root = root;
+  }
+
+  @SuppressWarnings("unchecked") static <K, V> PersistentMap<K, V> empty() {
+    return (PersistentMap<K, V>) EMPTY;
+  }
+
+  @SuppressWarnings("unchecked") V get(K key) {
+    return root == null ? null : (V) root.get(0, key.hashCode(), key);
+  }
+
+  /**
+   * Returns a map with {@code key} mapped to {@code value}, this map is not changed.
+   */
+  PersistentMap<K, V> plus(K key, V value) {
+    TrieNode node = root == null ? BitmapNode.EMPTY : root;
+    TrieNode newRoot = node.plus(0, key.hashCode(), key, value);
+    return newRoot == root ? this : new PersistentMap<K, V>(newRoot);
+  }
+
+  private interface TrieNode {
+    Object get(int shift, int hash, Object key);
+
+    TrieNode plus(int shift, int hash, Object key, Object value);
+  }
+
+  /**
+   * A node with up to 32 slots, only the slots in use are allocated. Each slot is a key and value
+   * pair, or a null key and a child node for keys which share the bits of hash so far.
+   */
+  private static final class BitmapNode implements TrieNode {
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+    private final Object[] array;
+
+    BitmapNode(int bitmap, Object[] array) {
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    @Override public Object get(int shift, int hash, Object key) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+      Object slotKey = array[index];
+      Object slotValue = array[index + 1];
+      if (slotKey == null) {
+        return ((TrieNode) slotValue).get(shift + BITS, hash, key);
+      }
+      return key.equals(slotKey) ? slotValue : null;
+    }
+
+    @Override public TrieNode plus(int shift, int hash, Object key, Object value) {
+      int bit = bit(hash, shift);
+      int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+      if ((bitmap & bit) == 0) {
+        Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, index);
+        newArray[index] = key;
+        newArray[index + 1] = value;
+        System.arraycopy(array, index, newArray, index + 2, array.length - index);
+        return new BitmapNode(bitmap | bit, newArray);
+      }
+
+      Object slotKey = array[index];
+      Object slotValue = array[index + 1];
+      if (slotKey == null) {
+        TrieNode child = ((TrieNode) slotValue).plus(shift + BITS, hash, key, value);
+        return child == slotValue ? this : with(index, null, child);
+      }
+      if (key.equals(slotKey)) {
+        return slotValue == value ? this : with(index, slotKey, value);
+      }
+
+      /* two keys in one slot, push both down into a child node */
+      TrieNode child =
+          createNode(shift + BITS, slotKey.hashCode(), slotKey, slotValue, hash, key, value);
+      return with(index, null, child);
+    }
+
+    private BitmapNode with(int index, Object key, Object value) {
+      Object[] newArray = array.clone();
+      newArray[index] = key;
+      newArray[index + 1] = value;
+      return new BitmapNode(bitmap, newArray);
+    }
+
+    private static TrieNode createNode(int shift, int hash1, Object key1, Object value1,
+        int hash2, Object key2, Object value2) {
+      if (hash1 == hash2) {
+        return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+      }
+      /* different hashes always differ in the bits of some level before shift exceeds 30 */
+      return EMPTY.plus(shift, hash1, key1, value1).plus(shift, hash2, key2, value2);
+    }
+  }
+
+  /**
+   * A node of keys with the same hash, compared one by one.
+   */
+  private static final class CollisionNode implements TrieNode {
+    private final int hash;
+    private final Object[] array;
+
+    CollisionNode(int hash, Object[] array) {
+      this.hash = hash;
+      this.array = array;
+    }
+
+    @Override public Object get(int shift, int hash, Object key) {
+      if (hash != this.hash) {
+        return null;
+      }
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return array[i + 1];
+        }
+      }
+      return null;
+    }
+
+    @Override public TrieNode plus(int shift, int hash, Object key, Object value) {
+      if (hash != this.hash) {
+        /* nest this node in a bitmap node, then add the key there */
+        return new BitmapNode(bit(this.hash, shift), new Object[] { null, this }).plus(shift, hash,
+            key, value);
+      }
+
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          if (array[i + 1] == value) {
+            return this;
+          }
+          Object[] newArray = array.clone();
+          newArray[i + 1] = value;
+          return new CollisionNode(hash, newArray);
+        }
+      }
+      Object[] newArray = new Object[array.length + 2];
+      System.arraycopy(array, 0, newArray, 0, array.length);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+      return new CollisionNode(hash, newArray);
+    }
+  }
+
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routers prepared ahead by {@link RouterCall#prepare()}. Each prepared router is keyed by its
+ * router method and arguments, expires after a ttl and can only be taken once. The cache is
+ * bounded, new routers are dropped when it's full. Expired routers are swept in background even if
+ * they are never taken, so the caller in their arguments is not held longer than the ttl.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class PreparedRouters {
+  private static final int MAX_SIZE = 32;
+
+  private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+  private final long ttlNanos;
+  private volatile ScheduledExecutorService sweeper;
+  /* guarded by this */
+  private boolean sweepScheduled;
+  private long sweepAt;
+  private final Runnable sweep = new Runnable() {
+    @Override public void run() {
+      synchronized (PreparedRouters.this) {
+        sweepScheduled = false;
+      }
+
+      long now = System.nanoTime();
+      evictExpired(now);
+      long next = 0;
+      boolean pending = false;
+      for (Entry entry : entries.values()) {
+        if (!pending || entry.expiresAt - next < 0) {
+          next = entry.expiresAt;
+          pending = true;
+        }
+      }
+      if (pending) {
+        scheduleSweep(next);
+      }
+    }
+  };
+
+  PreparedRouters(long ttlNanos) {
+    this(ttlNanos, null);
+  }
+
+  PreparedRouters(long ttlNanos, ScheduledExecutorService sweeper) {
+    this.ttlNanos = ttlNanos;
+    this.sweeper = sweeper;
+  }
+
+  void put(RouterMethod<?> routerMethod, Object[] args, Router router) {
+    long now = System.nanoTime();
+    if (entries.size() >= MAX_SIZE) {
+      evictExpired(now);
+      if (entries.size() >= MAX_SIZE) {
+        return;
+      }
+    }
+
+    long expiresAt = now + ttlNanos;
+    entries.put(new Key(routerMethod, args), new Entry(router, expiresAt));
+    scheduleSweep(expiresAt);
+  }
+
+  /**
+   * Take the prepared router of given router method and arguments.
+   *
+   * @return prepared {@link Router}, or null if not prepared or expired
+   */
+  Router take(RouterMethod<?> routerMethod, Object[] args) {
+    if (entries.isEmpty()) {
+      return null;
+    }
+
+    Entry entry = entries.remove(new Key(routerMethod, args));
+    if (entry == null || entry.expiresAt - System.nanoTime() < 0) {
+      return null;
+    }
+    return entry.router;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  private void evictExpired(long now) {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().expiresAt - now < 0) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Schedule a sweep at given time, unless an earlier one is scheduled already. A sweep only
+   * refers to this cache, so a pending sweep never holds the arguments of prepared routers.
+   */
+  private void scheduleSweep(long at) {
+    synchronized (this) {
+      if (sweepScheduled && at - sweepAt >= 0) {
+        return;
+      }
+      sweepScheduled = true;
+      sweepAt = at;
+    }
+
+    /* one nanosecond later, so the router is already expired when the sweep runs */
+    long delay = Math.max(0, at - System.nanoTime()) + 1;
+    sweeper().schedule(sweep, delay, TimeUnit.NANOSECONDS);
+  }
+
+  private ScheduledExecutorService sweeper() {
+    ScheduledExecutorService executor = sweeper;
+    if (executor == null) {
+      synchronized (this) {
+        executor = sweeper;
+        if (executor == null) {
+          executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "Routine Prepared Router Sweeper");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+          sweeper = executor;
+        }
+      }
+    }
+
+    return executor;
+  }
+
+  private static final class Key {
+    final RouterMethod<?> routerMethod;
+    final Object[] args;
+
+    Key(RouterMethod<?> routerMethod, Object[] args) {
+      this.routerMethod = routerMethod;
+      this.args = args;
+    }
+
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+
+      Key that = (Key) other;
+      return routerMethod == that.routerMethod && Arrays.equals(args, that.args);
+    }
+
+    @Override public int hashCode() {
+      return System.identityHashCode(routerMethod) * 31 + Arrays.hashCode(args);
+    }
+  }
+
+  private static final class Entry {
+    final Router router;
+    final long expiresAt;
+
+    Entry(Router router, long expiresAt) {
+      this.router = router;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.anbillon.routine.Utils.resolveActivityInfo;
+
+/**
+ * Caches whether each page of {@link Matcher} can be resolved, so repeated matches don't ask
+ * package manager again. Both positive and negative results are cached until {@link #invalidate()}
+ * is called, or the package of app changes, e.g. a component is enabled or disabled.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class ResolutionCache {
+  private final ConcurrentMap<Class<?>, Boolean> resolved = new ConcurrentHashMap<>();
+  /* increased on each invalidation, a result resolved before it is not cached */
+  private final AtomicInteger generation = new AtomicInteger();
+  private volatile boolean registered;
+
+  /**
+   * Check if given intent for {@code page} can be resolved.
+   *
+   * @param context context to resolve with
+   * @param intent intent with the component of {@code page}
+   * @param page page class of intent
+   * @return true if resolved, otherwise return false
+   */
+  boolean resolve(Context context, Intent intent, Class<?> page) {
+    Boolean result = resolved.get(page);
+    if (result != null) {
+      return result;
+    }
+
+    registerReceiver(context);
+    int current = generation.get();
+    result = resolveActivityInfo(context, intent) != null;
+    if (current == generation.get()) {
+      resolved.put(page, result);
+    }
+    return result;
+  }
+
+  /**
+   * Discard all cached results.
+   */
+  void invalidate() {
+    generation.incrementAndGet();
+    resolved.clear();
+  }
+
+  private void registerReceiver(Context context) {
+    if (registered) {
+      return;
+    }
+    synchronized (this) {
+      if (registered) {
+        return;
+      }
+      registered = true;
+    }
+
+    Context applicationContext = context.getApplicationContext();
+    if (applicationContext == null) {
+      applicationContext = context;
+    }
+    final String packageName = applicationContext.getPackageName();
+    IntentFilter filter = new IntentFilter(Intent.ACTION_PACKAGE_CHANGED);
+    filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+    filter.addDataScheme("package");
+    applicationContext.registerReceiver(new BroadcastReceiver() {
+      @Override public void onReceive(Context context, Intent intent) {
+        Uri data = intent.getData();
+        if (data == null || packageName == null
+            || packageName.equals(data.getSchemeSpecificPart())) {
+          invalidate();
+        }
+      }
+    }, filter);
+  }
+}
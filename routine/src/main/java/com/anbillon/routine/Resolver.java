@@ -36,6 +36,13 @@ public interface Resolver {
   void startActivityForResult(Intent intent, int requestCode, int enterAnim, int exitAnim)
       throws ActivityNotFoundException;
 
+  /**
+   * Start several activities at once, the last intent will be on the top of back stack. The
+   * animation is only used for the transition to the last activity.
+   */
+  void startActivities(Intent[] intents, int enterAnim, int exitAnim)
+      throws ActivityNotFoundException;
+
   /**
    * Creates {@link Resolver} instances based on the caller.
    */
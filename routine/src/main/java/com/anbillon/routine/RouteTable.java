@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.anbillon.routine.Utils.checkNotNull;
+
+/**
+ * A compact binary table of routes for {@link Matcher}, which is usually generated at build time
+ * by {@link Writer} and memory mapped at runtime, see {@link Matcher.Builder#addRouteTable}.
+ * The trie of routes stays in the table and is walked in place, and the class of a page is only
+ * loaded when its route is matched. Loading a table only reads the offsets of each node once to
+ * validate them, so a corrupted table fails to load rather than on match.
+ * Routes have the same syntax as {@link Matcher.Builder#addPage(String, Class)}, including
+ * placeholders.
+ * <p>
+ * File format (big endian): magic, format version, offset of root node, total length, then all
+ * strings (length and utf-8 bytes) followed by all nodes. Each node has the count of literal
+ * children, the offset of placeholder child for each type, the count of pages and placeholders,
+ * then literal children (segment and node offset) sorted by segment bytes, offsets of page class
+ * names and placeholders (index, name and type).
+ * </p>
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class RouteTable {
+  private static final int MAGIC = 0x52544254;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  /* marks a page whose class is not found, the map can't hold null */
+  private static final Class<?> NOT_FOUND = Void.class;
+
+  private static final int NODE_LITERAL_COUNT = 0;
+  private static final int NODE_PLACEHOLDERS = 4;
+  private static final int NODE_PAGE_COUNT =
+      NODE_PLACEHOLDERS + 4 * Matcher.ParamType.VALUES.length;
+  private static final int NODE_PARAM_COUNT = NODE_PAGE_COUNT + 4;
+  private static final int NODE_HEADER_SIZE = NODE_PARAM_COUNT + 4;
+
+  private final ByteBuffer buffer;
+  private final int root;
+  /* loaded page classes, keyed by offset of class name */
+  private final ConcurrentMap<Integer, Class<?>> pages = new ConcurrentHashMap<>();
+
+  RouteTable(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    int limit = buffer.limit();
+    if (limit < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a route table.");
+    }
+    if (buffer.getInt(4) != FORMAT_VERSION) {
+      throw new IOException("Unsupported version of route table: " + buffer.getInt(4));
+    }
+    this.root = buffer.getInt(8);
+    if (buffer.getInt(12) != limit || root < HEADER_SIZE || root > limit - NODE_HEADER_SIZE) {
+      throw new IOException("Route table is truncated.");
+    }
+    validate();
+  }
+
+  /**
+   * Check all the offsets of nodes and strings once, so a corrupted table fails here instead of
+   * on the first matched scheme url. Children are written before their parent and strings before
+   * all nodes, so each offset must be lower than the node which refers to it.
+   */
+  private void validate() throws IOException {
+    int limit = buffer.limit();
+    /* a valid table has no more nodes than this, more visits mean nodes are shared or cyclic */
+    int remaining = limit / NODE_HEADER_SIZE;
+    Deque<int[]> nodes = new ArrayDeque<>();
+    nodes.push(new int[] { root, 0 });
+    while (!nodes.isEmpty()) {
+      if (remaining-- == 0) {
+        throw corrupted("too many nodes", root);
+      }
+      int[] entry = nodes.pop();
+      int node = entry[0];
+      int depth = entry[1];
+      int literalCount = buffer.getInt(node + NODE_LITERAL_COUNT);
+      int pageCount = buffer.getInt(node + NODE_PAGE_COUNT);
+      int paramCount = buffer.getInt(node + NODE_PARAM_COUNT);
+      if (literalCount < 0 || pageCount < 0 || paramCount < 0
+          || node + NODE_HEADER_SIZE + 8L * literalCount + 4L * pageCount + 12L * paramCount
+          > limit) {
+        throw corrupted("node out of bounds", node);
+      }
+
+      int offset = node + NODE_HEADER_SIZE;
+      for (int i = 0; i < literalCount; i++, offset += 8) {
+        validateString(buffer.getInt(offset), node);
+        nodes.push(new int[] { validateChild(buffer.getInt(offset + 4), node), depth + 1 });
+      }
+      for (int i = 0; i < Matcher.ParamType.VALUES.length; i++) {
+        int placeholder = buffer.getInt(node + NODE_PLACEHOLDERS + 4 * i);
+        if (placeholder != 0) {
+          nodes.push(new int[] { validateChild(placeholder, node), depth + 1 });
+        }
+      }
+      for (int i = 0; i < pageCount; i++, offset += 4) {
+        validateString(buffer.getInt(offset), node);
+      }
+      for (int i = 0; i < paramCount; i++, offset += 12) {
+        int index = buffer.getInt(offset);
+        int type = buffer.getInt(offset + 8);
+        if (index < 0 || index >= depth || type < 0 || type >= Matcher.ParamType.VALUES.length) {
+          throw corrupted("invalid placeholder", node);
+        }
+        validateString(buffer.getInt(offset + 4), node);
+      }
+    }
+  }
+
+  private int validateChild(int child, int node) throws IOException {
+    if (child < HEADER_SIZE || child >= node) {
+      throw corrupted("invalid child " + child, node);
+    }
+    return child;
+  }
+
+  private void validateString(int string, int node) throws IOException {
+    if (string < HEADER_SIZE || string > node - 4) {
+      throw corrupted("invalid string " + string, node);
+    }
+    int length = buffer.getInt(string);
+    if (length < 0 || string + 4L + length > node) {
+      throw corrupted("invalid string " + string, node);
+    }
+  }
+
+  private static IOException corrupted(String reason, int node) {
+    return new IOException("Route table is corrupted, " + reason + " in node " + node + ".");
+  }
+
+  /**
+   * Memory map a route table from file.
+   *
+   * @param file file written by {@link Writer}
+   * @return {@link RouteTable}
+   * @throws IOException if the file can't be read or it's not a valid table
+   */
+  public static RouteTable map(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      return new RouteTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Memory map a route table from assets. The asset must be stored uncompressed in apk, e.g. add
+   * its extension into {@code aaptOptions.noCompress}.
+   *
+   * @param context context to open assets
+   * @param assetName name of asset written by {@link Writer}
+   * @return {@link RouteTable}
+   * @throws IOException if the asset can't be read or it's not a valid table
+   */
+  public static RouteTable map(Context context, String assetName) throws IOException {
+    AssetFileDescriptor descriptor = context.getAssets().openFd(assetName);
+    try {
+      FileInputStream inputStream = descriptor.createInputStream();
+      try {
+        return new RouteTable(inputStream.getChannel()
+            .map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                descriptor.getLength()));
+      } finally {
+        inputStream.close();
+      }
+    } finally {
+      descriptor.close();
+    }
+  }
+
+  /**
+   * Find the routes in this table which are a prefix of given segments. Only absolute reads are
+   * used on the buffer, so a table can be matched on many threads.
+   *
+   * @param segments segments of scheme url
+   * @param routes list to add the routes in, from the longest one to the shortest one
+   */
+  void candidates(List<String> segments, List<Matcher.Node> routes) {
+    byte[][] encoded = new byte[segments.size()][];
+    walk(root, segments, encoded, 0, routes);
+  }
+
+  private boolean walk(int node, List<String> segments, byte[][] encoded, int index,
+      List<Matcher.Node> routes) {
+    boolean found = false;
+    if (index < segments.size()) {
+      String segment = segments.get(index);
+      int child = literalChild(node, segmentBytes(segments, encoded, index));
+      found = child != 0 && walk(child, segments, encoded, index + 1, routes);
+      for (int i = 0; !found && i < Matcher.ParamType.VALUES.length; i++) {
+        int placeholder = buffer.getInt(node + NODE_PLACEHOLDERS + 4 * i);
+        found = placeholder != 0 && Matcher.ParamType.VALUES[i].accepts(segment)
+            && walk(placeholder, segments, encoded, index + 1, routes);
+      }
+    }
+
+    Matcher.Node route = route(node, index);
+    if (route != null) {
+      routes.add(route);
+      return true;
+    }
+    return found;
+  }
+
+  private static byte[] segmentBytes(List<String> segments, byte[][] encoded, int index) {
+    byte[] bytes = encoded[index];
+    if (bytes == null) {
+      bytes = segments.get(index).getBytes(UTF_8);
+      encoded[index] = bytes;
+    }
+    return bytes;
+  }
+
+  /**
+   * Binary search the literal child of node.
+   *
+   * @return offset of child node, or 0 if not found
+   */
+  private int literalChild(int node, byte[] segment) {
+    int low = 0;
+    int high = buffer.getInt(node + NODE_LITERAL_COUNT) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int entry = node + NODE_HEADER_SIZE + 8 * middle;
+      int result = compare(buffer.getInt(entry), segment);
+      if (result < 0) {
+        low = middle + 1;
+      } else if (result > 0) {
+        high = middle - 1;
+      } else {
+        return buffer.getInt(entry + 4);
+      }
+    }
+    return 0;
+  }
+
+  /* compares the string at offset with bytes, as unsigned bytes */
+  private int compare(int offset, byte[] bytes) {
+    int length = buffer.getInt(offset);
+    int start = offset + 4;
+    int count = Math.min(length, bytes.length);
+    for (int i = 0; i < count; i++) {
+      int result = (buffer.get(start + i) & 0xff) - (bytes[i] & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return length - bytes.length;
+  }
+
+  /**
+   * Create the route of node with its pages loaded.
+   *
+   * @return route or null if no page of node is found
+   */
+  private Matcher.Node route(int node, int depth) {
+    int pageCount = buffer.getInt(node + NODE_PAGE_COUNT);
+    if (pageCount == 0) {
+      return null;
+    }
+
+    int offset = node + NODE_HEADER_SIZE + 8 * buffer.getInt(node + NODE_LITERAL_COUNT);
+    Set<Class<?>> routePages = new LinkedHashSet<>(pageCount);
+    for (int i = 0; i < pageCount; i++, offset += 4) {
+      Class<?> page = page(buffer.getInt(offset));
+      if (page != NOT_FOUND) {
+        routePages.add(page);
+      }
+    }
+    if (routePages.isEmpty()) {
+      return null;
+    }
+
+    int paramCount = buffer.getInt(node + NODE_PARAM_COUNT);
+    Matcher.Param[] params = new Matcher.Param[paramCount];
+    for (int i = 0; i < paramCount; i++, offset += 12) {
+      params[i] = new Matcher.Param(buffer.getInt(offset), string(buffer.getInt(offset + 4)),
+          Matcher.ParamType.VALUES[buffer.getInt(offset + 8)]);
+    }
+
+    return new Matcher.Node(depth, routePages, params);
+  }
+
+  private Class<?> page(int offset) {
+    Class<?> page = pages.get(offset);
+    if (page == null) {
+      try {
+        page = Class.forName(string(offset));
+      } catch (ClassNotFoundException e) {
+        page = NOT_FOUND;
+      }
+      pages.put(offset, page);
+    }
+    return page;
+  }
+
+  private String string(int offset) {
+    byte[] bytes = new byte[buffer.getInt(offset)];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(offset + 4 + i);
+    }
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * Writes routes into the format of {@link RouteTable}, usually at build time.
+   */
+  public static final class Writer {
+    private final Map<String, Set<String>> pageNamesMap = new LinkedHashMap<>();
+
+    /**
+     * Add a route to page.
+     *
+     * @param schemeUrl scheme url of route, may have placeholders
+     * @param pageName class name of page
+     * @return this object for further chaining
+     */
+    public Writer addPageName(String schemeUrl, String pageName) {
+      checkNotNull(pageName, "pageName == null");
+      String route = Utils.resolveSchemeUrl(schemeUrl);
+      Set<String> pageNames = pageNamesMap.get(route);
+      if (pageNames == null) {
+        pageNames = new LinkedHashSet<>();
+        pageNamesMap.put(route, pageNames);
+      }
+      pageNames.add(pageName);
+      return this;
+    }
+
+    /**
+     * Write the table of all added routes.
+     *
+     * @param outputStream stream to write to, it's not closed
+     * @throws IOException if failed to write
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+      WriterNode root = new WriterNode();
+      for (Map.Entry<String, Set<String>> entry : pageNamesMap.entrySet()) {
+        WriterNode node = root;
+        List<String> segments = Matcher.segments(entry.getKey());
+        List<Matcher.Param> params = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+          Matcher.Param param = Matcher.Param.parse(i, segments.get(i));
+          if (param != null) {
+            params.add(param);
+            node = node.placeholder(param.type);
+          } else {
+            node = node.child(segments.get(i));
+          }
+        }
+        if (!node.pageNames.isEmpty() && !node.params.equals(params)) {
+          throw new IllegalArgumentException("Route " + entry.getKey()
+              + " conflicts with another route of different placeholders.");
+        }
+        node.pageNames.addAll(entry.getValue());
+        node.params = params;
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(bytes);
+      output.write(new byte[HEADER_SIZE]);
+      Map<String, Integer> strings = new HashMap<>();
+      root.writeStrings(output, strings);
+      int rootOffset = root.write(output, strings);
+      output.flush();
+
+      ByteBuffer table = ByteBuffer.wrap(bytes.toByteArray());
+      table.putInt(0, MAGIC);
+      table.putInt(4, FORMAT_VERSION);
+      table.putInt(8, rootOffset);
+      table.putInt(12, table.capacity());
+      outputStream.write(table.array());
+      outputStream.flush();
+    }
+  }
+
+  private static final class WriterNode {
+    private static final Comparator<byte[]> BYTES_ORDER = new Comparator<byte[]>() {
+      @Override public int compare(byte[] o1, byte[] o2) {
+        int count = Math.min(o1.length, o2.length);
+        for (int i = 0; i < count; i++) {
+          int result = (o1[i] & 0xff) - (o2[i] & 0xff);
+          if (result != 0) {
+            return result;
+          }
+        }
+        return o1.length - o2.length;
+      }
+    };
+
+    /* keyed by utf-8 bytes of segment, in the order used by binary search */
+    final TreeMap<byte[], WriterNode> children = new TreeMap<>(BYTES_ORDER);
+    final WriterNode[] placeholders = new WriterNode[Matcher.ParamType.VALUES.length];
+    final Set<String> pageNames = new LinkedHashSet<>();
+    List<Matcher.Param> params = new ArrayList<>();
+
+    WriterNode child(String segment) {
+      byte[] key = segment.getBytes(UTF_8);
+      WriterNode child = children.get(key);
+      if (child == null) {
+        child = new WriterNode();
+        children.put(key, child);
+      }
+      return child;
+    }
+
+    WriterNode placeholder(Matcher.ParamType type) {
+      WriterNode placeholder = placeholders[type.ordinal()];
+      if (placeholder == null) {
+        placeholder = new WriterNode();
+        placeholders[type.ordinal()] = placeholder;
+      }
+      return placeholder;
+    }
+
+    void writeStrings(DataOutputStream output, Map<String, Integer> strings) throws IOException {
+      for (Map.Entry<byte[], WriterNode> entry : children.entrySet()) {
+        writeString(output, strings, new String(entry.getKey(), UTF_8));
+        entry.getValue().writeStrings(output, strings);
+      }
+      for (WriterNode placeholder : placeholders) {
+        if (placeholder != null) {
+          placeholder.writeStrings(output, strings);
+        }
+      }
+      for (String pageName : pageNames) {
+        writeString(output, strings, pageName);
+      }
+      for (Matcher.Param param : params) {
+        writeString(output, strings, param.name);
+      }
+    }
+
+    private static void writeString(DataOutputStream output, Map<String, Integer> strings,
+        String string) throws IOException {
+      if (strings.containsKey(string)) {
+        return;
+      }
+      strings.put(string, output.size());
+      byte[] bytes = string.getBytes(UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+
+    /**
+     * Write children before this node, so the offsets of children are known.
+     *
+     * @return offset of this node
+     */
+    int write(DataOutputStream output, Map<String, Integer> strings) throws IOException {
+      List<Integer> childOffsets = new ArrayList<>(children.size());
+      for (WriterNode child : children.values()) {
+        childOffsets.add(child.write(output, strings));
+      }
+      int[] placeholderOffsets = new int[placeholders.length];
+      for (int i = 0; i < placeholders.length; i++) {
+        if (placeholders[i] != null) {
+          placeholderOffsets[i] = placeholders[i].write(output, strings);
+        }
+      }
+
+      int offset = output.size();
+      output.writeInt(children.size());
+      for (int placeholderOffset : placeholderOffsets) {
+        output.writeInt(placeholderOffset);
+      }
+      output.writeInt(pageNames.size());
+      output.writeInt(params.size());
+      int index = 0;
+      for (byte[] segment : children.keySet()) {
+        output.writeInt(strings.get(new String(segment, UTF_8)));
+        output.writeInt(childOffsets.get(index++));
+      }
+      for (String pageName : pageNames) {
+        output.writeInt(strings.get(pageName));
+      }
+      for (Matcher.Param param : params) {
+        output.writeInt(param.index);
+        output.writeInt(strings.get(param.name));
+        output.writeInt(param.type.ordinal());
+      }
+      return offset;
+    }
+  }
+}
@@ -33,6 +33,7 @@ import static com.anbillon.routine.Utils.resolveActivityInfo;
 public final class Router {
   private final Method method;
   private final String target;
+  private final Class<?> page;
   private final Resolver resolver;
   private final Intent intent;
   private final int requestCode;
@@ -42,6 +43,7 @@ public final class Router {
   private Router(Builder builder) {
     this.method = builder.method;
     this.target = builder.target;
+    this.page = builder.page;
     this.resolver = builder.resolver;
     this.intent = checkNotNull(builder.intent, "intent == null in Router");
     this.requestCode = builder.requestCode;
@@ -68,6 +70,22 @@ public final class Router {
     return true;
   }
 
+  /**
+   * Start given intents at once with the resolver and animation of this router.
+   *
+   * @param intents intents to start, the last one will be on the top
+   * @return true if open successfully, otherwise return false
+   */
+  boolean startAll(Intent[] intents) {
+    try {
+      resolver.startActivities(intents, enterAnim, exitAnim);
+    } catch (ActivityNotFoundException ignore) {
+      return false;
+    }
+
+    return true;
+  }
+
   /**
    * Routine supports three {@link Method}.
    *
@@ -84,6 +102,14 @@ public final class Router {
     return target;
   }
 
+  /**
+   * The resolved page class of target if known, it's only available for static {@link
+   * Method#PAGE} and {@link Method#PAGE_NAME}.
+   */
+  Class<?> page() {
+    return page;
+  }
+
   /**
    * Origin page. Generally it's the name of caller.
    */
@@ -127,6 +153,7 @@ public final class Router {
   public static final class Builder {
     private Method method;
     private String target;
+    private Class<?> page;
     private Resolver resolver;
     private Intent intent;
     private int requestCode;
@@ -139,6 +166,7 @@ public final class Router {
     Builder(Router router) {
       this.method = router.method;
       this.target = router.target;
+      this.page = router.page;
       this.resolver = router.resolver;
       this.intent = router.intent;
       this.requestCode = router.requestCode;
@@ -156,6 +184,11 @@ public final class Router {
       return this;
     }
 
+    Builder page(Class<?> page) {
+      this.page = page;
+      return this;
+    }
+
     Builder resolver(Resolver resolver) {
       this.resolver = resolver;
       return this;
@@ -33,18 +33,58 @@ import static com.anbillon.routine.Utils.getExtraRawType;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 final class RouterBuilder {
-  private final Intent intent;
+  /* only set on the builders of RouterBuilderPool */
+  private final Router.Builder routerBuilder;
+  boolean inUse;
+  private Intent intent;
   private Method method;
   private String target;
+  private Class<?> page;
   private Resolver resolver;
   private int requestCode = -1;
   private int enterAnim;
   private int exitAnim;
 
   RouterBuilder() {
+    this.routerBuilder = null;
     this.intent = new Intent();
   }
 
+  /**
+   * Create a reusable builder, the given {@link Router.Builder} will be reused for each build.
+   *
+   * @param routerBuilder reusable {@link Router.Builder}
+   */
+  RouterBuilder(Router.Builder routerBuilder) {
+    this.routerBuilder = routerBuilder;
+  }
+
+  /**
+   * Create a builder which starts with a copy of given template.
+   *
+   * @param template template builder, it will not be changed
+   */
+  RouterBuilder(RouterBuilder template) {
+    this.routerBuilder = null;
+    reset(template);
+  }
+
+  /**
+   * Reset this builder to a copy of given template.
+   *
+   * @param template template builder, it will not be changed
+   */
+  void reset(RouterBuilder template) {
+    this.intent = new Intent(template.intent);
+    this.method = template.method;
+    this.target = template.target;
+    this.page = template.page;
+    this.resolver = template.resolver;
+    this.requestCode = template.requestCode;
+    this.enterAnim = template.enterAnim;
+    this.exitAnim = template.exitAnim;
+  }
+
   /**
    * Add scheme url into current builder if existed.
    *
@@ -53,6 +93,7 @@ final class RouterBuilder {
   void schemeUrl(String schemeUrl) {
     this.method = Method.SCHEME_URL;
     this.target = schemeUrl;
+    this.page = null;
   }
 
   /**
@@ -63,6 +104,21 @@ final class RouterBuilder {
   void pageName(String pageName) {
     this.method = Method.PAGE_NAME;
     this.target = pageName;
+    this.page = null;
+  }
+
+  /**
+   * Resolve the page class of page name ahead if possible.
+   */
+  void resolvePage() {
+    if (method != Method.PAGE_NAME || page != null) {
+      return;
+    }
+
+    try {
+      page = Class.forName(target);
+    } catch (ClassNotFoundException ignore) {
+    }
   }
 
   /**
@@ -73,6 +129,7 @@ final class RouterBuilder {
   void page(Class<?> page) {
     this.method = Method.PAGE;
     this.target = page.getCanonicalName();
+    this.page = page;
   }
 
   /**
@@ -83,6 +140,7 @@ final class RouterBuilder {
   void action(String action) {
     this.method = Method.ACTION;
     this.target = action;
+    this.page = null;
   }
 
   /**
@@ -128,6 +186,10 @@ final class RouterBuilder {
     this.requestCode = requestCode;
   }
 
+  int requestCode() {
+    return requestCode;
+  }
+
   /**
    * Put extended data into {@link Intent}.
    *
@@ -220,9 +282,24 @@ final class RouterBuilder {
     }
   }
 
+  /**
+   * Clear the references of this builder, the intent has been handed over to the built router.
+   */
+  void clear() {
+    intent = null;
+    target = null;
+    page = null;
+    resolver = null;
+    if (routerBuilder != null) {
+      routerBuilder.intent(null).target(null).page(null).resolver(null);
+    }
+  }
+
   Router build() {
-    return new Router.Builder().method(method)
+    Router.Builder builder = routerBuilder != null ? routerBuilder : new Router.Builder();
+    return builder.method(method)
         .target(target)
+        .page(page)
         .resolver(resolver)
         .intent(intent)
         .requestCode(requestCode)
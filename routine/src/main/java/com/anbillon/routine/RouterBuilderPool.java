@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+/**
+ * A pool of {@link RouterBuilder} which keeps one builder per thread. The pooled builder never
+ * escapes {@link RouterMethod#toRouter}, only the {@link Router} and its {@link
+ * android.content.Intent} do, so reusing it is safe for the immutable router.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class RouterBuilderPool {
+  private final ThreadLocal<RouterBuilder> builders = new ThreadLocal<RouterBuilder>() {
+    @Override protected RouterBuilder initialValue() {
+      return new RouterBuilder(new Router.Builder());
+    }
+  };
+
+  /**
+   * Acquire a builder of current thread which starts with a copy of given template. A new builder
+   * will be created if the pooled one is still in use.
+   *
+   * @param template template builder
+   * @return {@link RouterBuilder}
+   */
+  RouterBuilder acquire(RouterBuilder template) {
+    RouterBuilder routerBuilder = builders.get();
+    if (routerBuilder.inUse) {
+      return new RouterBuilder(template);
+    }
+
+    routerBuilder.inUse = true;
+    routerBuilder.reset(template);
+    return routerBuilder;
+  }
+
+  /**
+   * Release the builder acquired from this pool, references of the last router are cleared so the
+   * pool never holds a caller.
+   *
+   * @param routerBuilder builder to release
+   */
+  void release(RouterBuilder routerBuilder) {
+    routerBuilder.clear();
+    routerBuilder.inUse = false;
+  }
+}
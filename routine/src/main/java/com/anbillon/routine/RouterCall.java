@@ -16,8 +16,14 @@
 
 package com.anbillon.routine;
 
-import java.util.ArrayList;
-import java.util.List;
+import android.content.Intent;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.anbillon.routine.Utils.checkNotNull;
 
 /**
  * A router call which creates the router and invokes the router.
@@ -25,17 +31,42 @@ import java.util.List;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 public final class RouterCall<T> {
+  private final Routine routine;
   private final RouterMethod<T> routerMethod;
-  private final List<Interceptor> interceptors;
-  private final List<Filter> filters;
   private final Object[] args;
+  /* null if no event listener factory in routine, events are only emitted when it's present */
+  private final EventListener eventListener;
+  private final long dispatchNanos;
+  private volatile long timeoutNanos;
 
-  RouterCall(RouterMethod<T> routerMethod, List<Interceptor> interceptors, List<Filter> filters,
-      Object[] args) {
+  RouterCall(Routine routine, RouterMethod<T> routerMethod, Object[] args, long dispatchStart) {
+    this.routine = routine;
     this.routerMethod = routerMethod;
-    this.interceptors = interceptors;
-    this.filters = filters;
     this.args = args;
+    this.timeoutNanos = routine.callTimeoutNanos;
+    if (routine.eventListenerFactory == null) {
+      this.eventListener = null;
+      this.dispatchNanos = 0;
+    } else {
+      this.dispatchNanos = System.nanoTime() - dispatchStart;
+      this.eventListener = routine.eventListenerFactory.create(this);
+    }
+  }
+
+  /**
+   * Set the timeout of interceptors for this call, which overrides the one of {@link
+   * Routine.Builder#callTimeout(long, TimeUnit)}. 0 means no timeout.
+   *
+   * @param timeout timeout of interceptors
+   * @param unit unit of {@code timeout}
+   * @return this call
+   */
+  public RouterCall<T> timeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout < 0");
+    }
+    this.timeoutNanos = checkNotNull(unit, "unit == null").toNanos(timeout);
+    return this;
   }
 
   /**
@@ -44,7 +75,147 @@ public final class RouterCall<T> {
    * @return true if successfully, otherwise return false
    */
   public boolean execute() throws RoutineException {
-    return router().start();
+    if (eventListener == null) {
+      return start(realRouter(true));
+    }
+
+    eventListener.callStart(this, dispatchNanos);
+    boolean started;
+    try {
+      started = start(realRouter(true));
+    } catch (RoutineException e) {
+      eventListener.callFailed(this, e);
+      throw e;
+    }
+    eventListener.callEnd(this);
+    return started;
+  }
+
+  /**
+   * Execute several router calls at once, which builds a back stack of pages with one transition,
+   * e.g. for a deep link into a nested page. All calls go through interceptors first, then the
+   * intents are started together by the resolver of the last call, the last page will be on the
+   * top. Router with request code is not supported here.
+   *
+   * @param calls router calls in order of back stack
+   * @return true if successfully, otherwise return false
+   */
+  public static boolean executeAll(RouterCall<?>... calls) throws RoutineException {
+    checkNotNull(calls, "calls == null");
+    if (calls.length == 0) {
+      throw new IllegalArgumentException("No router call to execute.");
+    }
+
+    /* reject request codes before any interceptor or observer sees one of the calls */
+    for (RouterCall<?> call : calls) {
+      checkNotNull(call, "call == null");
+      if (call.routerMethod.requestCode(call.args) >= 0) {
+        throw new IllegalArgumentException(
+            "Router with request code can not be executed with others.");
+      }
+    }
+
+    Intent[] intents = new Intent[calls.length];
+    Router[] routers = new Router[calls.length];
+    Router router = null;
+    for (int i = 0; i < calls.length; i++) {
+      router = calls[i].router();
+      routers[i] = router;
+      /* an interceptor may still add a request code */
+      if (router.requestCode() >= 0) {
+        throw new IllegalArgumentException(
+            "Router with request code can not be executed with others: " + router.target());
+      }
+      intents[i] = router.intent();
+    }
+
+    RouterCall<?> last = calls[calls.length - 1];
+    boolean started;
+    if (last.eventListener == null) {
+      started = router.startAll(intents);
+    } else {
+      last.eventListener.startActivityStart(last, router);
+      started = router.startAll(intents);
+      last.eventListener.startActivityEnd(last, started);
+    }
+
+    if (started) {
+      for (Router each : routers) {
+        last.routine.notifyObservers(each);
+      }
+    }
+    return started;
+  }
+
+  /**
+   * Asynchronously run interceptors and resolve the router on the call executor of routine, then
+   * start the router on main thread. Only starting activity happens on main thread, so slow
+   * interceptors and intent resolution won't stall the caller.
+   *
+   * @param callback callback invoked on main thread
+   * @see Routine.Builder#callExecutor(java.util.concurrent.Executor)
+   */
+  public void enqueue(final Callback callback) {
+    checkNotNull(callback, "callback == null");
+    routine.callExecutor().execute(new Runnable() {
+      @Override public void run() {
+        if (eventListener != null) {
+          eventListener.callStart(RouterCall.this, dispatchNanos);
+        }
+        final Router router;
+        try {
+          router = realRouter(false);
+        } catch (RoutineException e) {
+          fail(callback, e);
+          return;
+        } catch (RuntimeException e) {
+          /* an uncaught exception on call executor would kill the process without callback */
+          fail(callback, new RoutineException(e.getMessage(), e));
+          return;
+        }
+
+        routine.mainExecutor.execute(new Runnable() {
+          @Override public void run() {
+            boolean started = start(router);
+            if (eventListener != null) {
+              eventListener.callEnd(RouterCall.this);
+            }
+            callback.onResult(RouterCall.this, router, started);
+          }
+        });
+      }
+    });
+  }
+
+  private void fail(final Callback callback, final RoutineException e) {
+    if (eventListener != null) {
+      eventListener.callFailed(this, e);
+    }
+    routine.mainExecutor.execute(new Runnable() {
+      @Override public void run() {
+        callback.onFailure(RouterCall.this, e);
+      }
+    });
+  }
+
+  /**
+   * Prepare the router of this call ahead in background, such as the likely next page of current
+   * screen. A later call of the same method with equal arguments will use the prepared router
+   * instead of running interceptors again, if it's taken within the ttl set by {@link
+   * Routine.Builder#preparedRouterTtl(long, java.util.concurrent.TimeUnit)}. A prepared router can
+   * only be used once.
+   */
+  public void prepare() {
+    routine.callExecutor().execute(new Runnable() {
+      @Override public void run() {
+        try {
+          /* no events for a prepared router, they belong to the call which takes it */
+          routine.preparedRouters.put(routerMethod, args, createRouter(null, false));
+        } catch (RoutineException | RuntimeException ignore) {
+          /* speculative work never crashes, the call runs interceptors again and reports errors */
+        }
+      }
+    });
   }
 
   /**
@@ -53,23 +224,152 @@ public final class RouterCall<T> {
    * @return create handled {@link Router}
    */
   public Router router() throws RoutineException {
-    Router originRouter = routerMethod.toRouter(args);
-
-    /* build filters with matcher */
-    Matcher matcher = new Matcher.Builder().build();
-    FilterChain filterChain = new FilterChain(filters, 0, matcher);
-    Matcher realMatcher = filterChain.proceed(matcher);
-    FiltersInterceptor filtersInterceptor = new FiltersInterceptor(realMatcher);
-
-    /* build a full stack of interceptors */
-    List<Interceptor> fullInterceptors = new ArrayList<>();
-    fullInterceptors.add(new BridgeInterceptor());
-    fullInterceptors.add(filtersInterceptor);
-    fullInterceptors.addAll(interceptors);
-    fullInterceptors.add(new RealInterceptor());
-    Interceptor.Chain interceptorChain = new InterceptorChain(fullInterceptors, 0, originRouter);
-
-    /* proceed the chain to get real router */
-    return interceptorChain.proceed(originRouter);
+    if (eventListener == null) {
+      return realRouter(true);
+    }
+
+    eventListener.callStart(this, dispatchNanos);
+    Router router;
+    try {
+      router = realRouter(true);
+    } catch (RoutineException e) {
+      eventListener.callFailed(this, e);
+      throw e;
+    }
+    eventListener.callEnd(this);
+    return router;
+  }
+
+  /**
+   * Take the prepared router or create a new one.
+   *
+   * @param blocking true if the caller waits for interceptors, such as main thread
+   */
+  private Router realRouter(boolean blocking) throws RoutineException {
+    Router router = routine.preparedRouters.take(routerMethod, args);
+    if (router == null) {
+      router = createRouter(eventListener, blocking);
+    }
+
+    return router;
+  }
+
+  private Router createRouter(EventListener eventListener, boolean blocking)
+      throws RoutineException {
+    if (eventListener != null) {
+      eventListener.toRouterStart(this);
+    }
+    Router originRouter = routerMethod.toRouter(routine.builderPool, args);
+    if (eventListener != null) {
+      eventListener.toRouterEnd(this, originRouter);
+    }
+
+    /* the full stack of interceptors is composed once by routine */
+    Interceptor[] pipeline = routine.pipelines.get(originRouter);
+    long timeoutNanos = this.timeoutNanos;
+    InterceptorChain interceptorChain =
+        new InterceptorChain(pipeline, originRouter, this, eventListener, timeoutNanos);
+    if (timeoutNanos == 0) {
+      /* proceed the chain to get real router */
+      return interceptorChain.proceed(originRouter);
+    }
+
+    /* interceptors mutate the origin intent, even after an abandoned chain has timed out */
+    Router fallbackRouter = routine.timeoutFallback == null ? null
+        : originRouter.newBuilder().intent(new Intent(originRouter.intent())).build();
+    try {
+      /* a call off the caller thread only checks the deadline between interceptors */
+      return blocking ? proceedWithin(interceptorChain, originRouter, timeoutNanos)
+          : interceptorChain.proceed(originRouter);
+    } catch (RoutineTimeoutException e) {
+      routine.interceptorTimedOut(e.interceptor());
+      if (fallbackRouter == null) {
+        throw e;
+      }
+      /* resolve the copy by built-in interceptors only, so it can be started as it is */
+      Interceptor[] builtIn = routine.pipelines.builtIn(fallbackRouter.method());
+      fallbackRouter =
+          new InterceptorChain(builtIn, fallbackRouter, this, null, 0).proceed(fallbackRouter);
+      return checkNotNull(routine.timeoutFallback.fallback(fallbackRouter, e),
+          "fallback returned null router");
+    }
+  }
+
+  /**
+   * Proceed the chain on call executor and wait for it at most {@code timeoutNanos}, the chain is
+   * interrupted if it times out.
+   */
+  private Router proceedWithin(final InterceptorChain chain, final Router router,
+      long timeoutNanos) throws RoutineException {
+    FutureTask<Router> task = new FutureTask<>(new Callable<Router>() {
+      @Override public Router call() throws Exception {
+        return chain.proceed(router);
+      }
+    });
+    routine.callExecutor().execute(task);
+
+    try {
+      return task.get(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      Interceptor interceptor = chain.running();
+      task.cancel(true);
+      throw new RoutineTimeoutException(interceptor, timeoutNanos);
+    } catch (InterruptedException e) {
+      task.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RoutineException("Interrupted while waiting for interceptors.", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RoutineException) {
+        throw (RoutineException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RoutineException(cause.getMessage(), cause);
+    }
+  }
+
+  private boolean start(Router router) {
+    boolean started;
+    if (eventListener == null) {
+      started = router.start();
+    } else {
+      eventListener.startActivityStart(this, router);
+      started = router.start();
+      eventListener.startActivityEnd(this, started);
+    }
+
+    /* observers see navigations, not routers which are only created */
+    if (started) {
+      routine.notifyObservers(router);
+    }
+    return started;
+  }
+
+  /**
+   * Communicates the result of {@link #enqueue(Callback)}. All methods are invoked on main thread.
+   */
+  public interface Callback {
+    /**
+     * Invoked when the router has been started.
+     *
+     * @param call the enqueued call
+     * @param router the router after all interceptors
+     * @param started true if the page has been opened, otherwise false
+     */
+    void onResult(RouterCall<?> call, Router router, boolean started);
+
+    /**
+     * Invoked when an interceptor has interrupted the call. A runtime exception thrown while
+     * creating the router is the cause of {@code e}.
+     *
+     * @param call the enqueued call
+     * @param e exception thrown by the interceptor
+     */
+    void onFailure(RouterCall<?> call, RoutineException e);
   }
 }
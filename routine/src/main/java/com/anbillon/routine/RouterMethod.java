@@ -42,23 +42,89 @@ import static com.anbillon.routine.Utils.hasUnresolvableType;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 final class RouterMethod<T> {
-  private final MethodHandler<?>[] methodHandlers;
-  private final ParameterHandler<?>[] parameterHandlers;
+  final MethodHandler<?>[] methodHandlers;
+  final ParameterHandler<?>[] parameterHandlers;
   final Adapter<T> adapter;
 
-  RouterMethod(Builder<T> builder) {
-    this.methodHandlers = builder.methodHandlers;
-    this.parameterHandlers = builder.parameterHandlers;
-    this.adapter = builder.adapter;
+  /* method handlers are static for the method, apply them once into an immutable template */
+  private final RouterBuilder template;
+
+  RouterMethod(MethodHandler<?>[] methodHandlers, ParameterHandler<?>[] parameterHandlers,
+      Adapter<T> adapter) {
+    this.methodHandlers = methodHandlers;
+    this.parameterHandlers = parameterHandlers;
+    this.adapter = adapter;
+    this.template = new RouterBuilder();
+    for (MethodHandler<?> handler : methodHandlers) {
+      handler.apply(template);
+    }
+    template.resolvePage();
   }
 
-  Router toRouter(Object... args) throws IllegalArgumentException {
-    RouterBuilder routerBuilder = new RouterBuilder();
+  /**
+   * Create a {@link RouterMethod} from prebuilt {@link MethodSpec} without any reflection.
+   *
+   * @param routine {@link Routine}
+   * @param spec {@link MethodSpec}
+   * @return {@link RouterMethod}
+   */
+  @SuppressWarnings("unchecked") static RouterMethod<?> parse(Routine routine, MethodSpec spec) {
+    Adapter<?> adapter;
+    try {
+      adapter = routine.adapter(spec.returnType, new Annotation[0]);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException(
+          "Unable to router adapter for " + spec.returnType + "\n for method " + spec.name, e);
+    }
 
-    for (MethodHandler<?> handler : methodHandlers) {
-      handler.apply(routerBuilder);
+    if (!isValidCallType(adapter.callType())) {
+      throw new IllegalArgumentException("'"
+          + getRawType(adapter.callType()).getName()
+          + "' is not a valid call type. Routine supports void, boolean, Router and RouterCall."
+          + "\n for method "
+          + spec.name);
     }
 
+    ParameterHandler<?>[] parameterHandlers = spec.parameterHandlers.clone();
+    parameterHandlers[spec.callerIndex] = new ParameterHandler.Caller<>(routine);
+
+    return new RouterMethod<>(spec.methodHandlers, parameterHandlers, (Adapter<Object>) adapter);
+  }
+
+  private static boolean isValidCallType(Type callType) {
+    return callType == void.class
+        || callType == Void.class
+        || callType == boolean.class
+        || callType == Boolean.class
+        || callType == Router.class
+        || callType == RouterCall.class;
+  }
+
+  /**
+   * Get the request code of the {@link Router} created with given arguments, without creating it.
+   *
+   * @param args arguments of this invocation
+   * @return request code, or -1 if none
+   */
+  int requestCode(Object... args) {
+    int requestCode = template.requestCode();
+    for (int p = 0; p < parameterHandlers.length && args != null && p < args.length; p++) {
+      if (parameterHandlers[p] instanceof ParameterHandler.RequestCode && args[p] != null) {
+        requestCode = (Integer) args[p];
+      }
+    }
+
+    return requestCode;
+  }
+
+  /**
+   * Create a {@link Router} with given arguments.
+   *
+   * @param pool pool of {@link RouterBuilder}, null to create a new builder for each call
+   * @param args arguments of this invocation
+   * @return {@link Router}
+   */
+  Router toRouter(RouterBuilderPool pool, Object... args) throws IllegalArgumentException {
     /* It is an error to invoke a method with the wrong arg types. */
     @SuppressWarnings("unchecked") ParameterHandler<Object>[] handlers =
         (ParameterHandler<Object>[]) parameterHandlers;
@@ -71,11 +137,25 @@ final class RouterMethod<T> {
           + ")");
     }
 
-    for (int p = 0; p < argumentCount; p++) {
-      handlers[p].apply(routerBuilder, args[p]);
+    if (pool == null) {
+      RouterBuilder routerBuilder = new RouterBuilder(template);
+      for (int p = 0; p < argumentCount; p++) {
+        handlers[p].apply(routerBuilder, args[p]);
+      }
+
+      return routerBuilder.build();
     }
 
-    return routerBuilder.build();
+    RouterBuilder routerBuilder = pool.acquire(template);
+    try {
+      for (int p = 0; p < argumentCount; p++) {
+        handlers[p].apply(routerBuilder, args[p]);
+      }
+
+      return routerBuilder.build();
+    } finally {
+      pool.release(routerBuilder);
+    }
   }
 
   static final class Builder<T> {
@@ -105,14 +185,10 @@ final class RouterMethod<T> {
     public RouterMethod build() {
       adapter = createAdapter();
       Type callType = adapter.callType();
-      if (callType != void.class
-          && callType != Void.class
-          && callType != boolean.class
-          && callType != Boolean.class
-          && callType != Router.class) {
+      if (!isValidCallType(callType)) {
         throw methodError("'"
             + getRawType(callType).getName()
-            + "' is not a valid call type. Routine supports void, boolean and Router.");
+            + "' is not a valid call type. Routine supports void, boolean, Router and RouterCall.");
       }
 
       int methodCount = methodAnnotations.length;
@@ -147,7 +223,7 @@ final class RouterMethod<T> {
         throw methodError("A router must contain one @Caller.");
       }
 
-      return new RouterMethod<>(this);
+      return new RouterMethod<>(methodHandlers, parameterHandlers, adapter);
     }
 
     @SuppressWarnings("unchecked") private Adapter<T> createAdapter() {
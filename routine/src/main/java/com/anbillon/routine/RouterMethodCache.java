@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of parsed {@link RouterMethod}. Each key is parsed exactly once, and only callers of the
+ * same key wait for each other, so different methods can be parsed concurrently.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+abstract class RouterMethodCache<K> {
+  private final ConcurrentMap<K, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Parse the {@link RouterMethod} for given key, this will be called once for each key.
+   *
+   * @param key key to parse
+   * @return {@link RouterMethod}
+   */
+  abstract RouterMethod<?> parse(K key);
+
+  /**
+   * Get {@link RouterMethod} origin cache. Parse a new one if there's no result.
+   *
+   * @param key key of router method
+   * @return {@link RouterMethod}
+   */
+  RouterMethod<?> get(K key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      Entry newEntry = new Entry();
+      entry = entries.putIfAbsent(key, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+      }
+    }
+
+    RouterMethod<?> result = entry.value;
+    if (result != null) {
+      return result;
+    }
+
+    /* only lock on the entry of this key, a failed parsing will be retried on next call */
+    synchronized (entry) {
+      result = entry.value;
+      if (result == null) {
+        result = parse(key);
+        entry.value = result;
+      }
+    }
+
+    return result;
+  }
+
+  private static final class Entry {
+    volatile RouterMethod<?> value;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dispatch table of one router interface. Each declared method gets a stable ordinal, and the
+ * {@link RouterMethod} of that ordinal is kept in an array. ART passes a new {@link Method}
+ * instance to the invocation handler on each call, so the ordinal can't be found by identity, and
+ * {@link Method#hashCode()} and {@link Method#equals(Object)} compare the declaring class and
+ * parameter types on every call. Router interfaces never extend others, so the ordinal is found by
+ * the name of method instead, whose hash is cached by the string. Only overloaded methods are
+ * compared by equality. The table is sized by the number of declared methods and router methods
+ * are only parsed when first invoked.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class RouterMethodTable {
+  private final Routine routine;
+  private final Method[] methods;
+  /* ordinals of the methods of each name, never modified after construction */
+  private final Map<String, int[]> ordinals;
+  private final RouterMethod<?>[] routerMethods;
+
+  RouterMethodTable(Routine routine, Class<?> router) {
+    this.routine = routine;
+    this.methods = Utils.routerMethods(router);
+    this.ordinals = new HashMap<>(methods.length * 2);
+    for (int i = 0; i < methods.length; i++) {
+      int[] overloads = ordinals.get(methods[i].getName());
+      if (overloads == null) {
+        overloads = new int[] { i };
+      } else {
+        overloads = Arrays.copyOf(overloads, overloads.length + 1);
+        overloads[overloads.length - 1] = i;
+      }
+      ordinals.put(methods[i].getName(), overloads);
+    }
+    this.routerMethods = new RouterMethod<?>[methods.length];
+  }
+
+  /**
+   * Get the {@link RouterMethod} of invoked method.
+   *
+   * @param method method passed to invocation handler
+   * @return {@link RouterMethod}
+   */
+  RouterMethod<?> get(Method method) {
+    int ordinal = ordinal(method);
+    if (ordinal < 0) {
+      return routine.loadRouterMethod(method);
+    }
+
+    RouterMethod<?> routerMethod = routerMethods[ordinal];
+    if (routerMethod == null) {
+      /* router method is memoized by routine and immutable, a racy publish is fine here */
+      routerMethod = routine.loadRouterMethod(method);
+      routerMethods[ordinal] = routerMethod;
+    }
+
+    return routerMethod;
+  }
+
+  private int ordinal(Method method) {
+    int[] overloads = ordinals.get(method.getName());
+    if (overloads == null) {
+      return -1;
+    }
+    if (overloads.length == 1) {
+      return overloads[0];
+    }
+
+    for (int ordinal : overloads) {
+      if (methods[ordinal].equals(method)) {
+        return ordinal;
+      }
+    }
+    return -1;
+  }
+}
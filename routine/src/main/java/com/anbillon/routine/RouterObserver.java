@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+/**
+ * Observes routers without changing them, such as logging and analytics. Unlike {@link
+ * Interceptor}, observers run on a background executor and never delay navigation.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public interface RouterObserver {
+  /**
+   * Called on a background thread with a snapshot of router after all interceptors, once the
+   * router has been started. Routers which are only created, such as by {@link RouterCall#router()}
+   * or {@link RouterCall#prepare()}, are not observed. Observers may be skipped if too many routers
+   * are waiting to be observed.
+   *
+   * @param router snapshot of {@link Router}
+   */
+  void onRouter(Router router);
+}
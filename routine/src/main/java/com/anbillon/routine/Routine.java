@@ -16,15 +16,38 @@
 
 package com.anbillon.routine;
 
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import java.io.File;
 import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static com.anbillon.routine.Utils.checkNotNull;
 
@@ -45,17 +68,80 @@ import static com.anbillon.routine.Utils.checkNotNull;
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
 public final class Routine {
-  private final Map<Method, RouterMethod> routerMethodCache = new ConcurrentHashMap<>();
-  private final List<Interceptor> interceptors;
+  private static final String BUILT_IN_ANNOTATION_PREFIX = "com.anbillon.routine.app.";
+  private static final int OBSERVER_QUEUE_SIZE = 64;
+
+  private final RouterMethodCache<Method> routerMethodCache = new RouterMethodCache<Method>() {
+    @Override RouterMethod<?> parse(Method method) {
+      if (stats == null) {
+        return parseRouterMethod(method);
+      }
+
+      long start = stats.parseStarted();
+      RouterMethod<?> routerMethod = parseRouterMethod(method);
+      stats.parseFinished(
+          method.getDeclaringClass().getName() + "." + MethodMetadataCache.signature(method),
+          start);
+      return routerMethod;
+    }
+  };
+  private final RouterMethodCache<MethodSpec> specMethodCache =
+      new RouterMethodCache<MethodSpec>() {
+        @Override RouterMethod<?> parse(MethodSpec spec) {
+          if (stats == null) {
+            return RouterMethod.parse(Routine.this, spec);
+          }
+
+          long start = stats.parseStarted();
+          RouterMethod<?> routerMethod = RouterMethod.parse(Routine.this, spec);
+          stats.parseFinished(spec.name, start);
+          return routerMethod;
+        }
+      };
+  /* routers are weakly referenced and keyed, so classes and their class loader can be unloaded */
+  private final Map<Class<?>, WeakReference<Object>> routerCache = new WeakHashMap<>();
+  /* eager warm-up of each router, racing creates of one router wait for the same warm-up */
+  private final Map<Class<?>, FutureTask<Void>> warmUps = new WeakHashMap<>();
+  private final ConcurrentMap<AdapterKey, Adapter<?>> adapterCache = new ConcurrentHashMap<>();
+  /* built-in interceptors and user interceptors, composed once for all calls */
+  final InterceptorPipelines pipelines;
   private final List<Filter> filters;
+  private final Object matcherLock = new Object();
+  private volatile Matcher matcher;
+  final ResolutionCache resolutionCache = new ResolutionCache();
   private final List<Adapter.Factory> adapterFactories;
   private final List<Resolver.Factory> resolverFactories;
+  private final Executor validateExecutor;
+  private final MethodMetadataCache metadataCache;
+  final RouterBuilderPool builderPool;
+  final Executor mainExecutor;
+  final PreparedRouters preparedRouters;
+  private volatile Executor callExecutor;
+  private final List<RouterObserver> observers;
+  private volatile Executor observerExecutor;
+  private final StatsRecorder stats;
+  final EventListener.Factory eventListenerFactory;
+  final long callTimeoutNanos;
+  final TimeoutFallback timeoutFallback;
 
   private Routine(Builder builder) {
-    this.interceptors = Utils.immutableList(builder.interceptors);
+    this.pipelines = new InterceptorPipelines(this, Utils.immutableList(builder.interceptors),
+        Utils.immutableList(builder.interceptorScopes));
     this.filters = Utils.immutableList(builder.filters);
     this.adapterFactories = Utils.immutableList(builder.adapterFactories);
     this.resolverFactories = Utils.immutableList(builder.resolverFactories);
+    this.validateExecutor = builder.validateExecutor;
+    this.metadataCache = builder.metadataCache;
+    this.builderPool = builder.reuseBuilders ? new RouterBuilderPool() : null;
+    this.stats = builder.recordStats ? new StatsRecorder() : null;
+    this.mainExecutor = new MainThreadExecutor();
+    this.callExecutor = builder.callExecutor;
+    this.preparedRouters = new PreparedRouters(builder.preparedRouterTtlNanos);
+    this.observers = Utils.immutableList(builder.observers);
+    this.observerExecutor = builder.observerExecutor;
+    this.eventListenerFactory = builder.eventListenerFactory;
+    this.callTimeoutNanos = builder.callTimeoutNanos;
+    this.timeoutFallback = builder.timeoutFallback;
   }
 
   /**
@@ -74,13 +160,54 @@ public final class Routine {
    * navigation with result, then add annotation on parameter with {@link
    * com.anbillon.routine.app.RequestCode RequestCode}.
    *
+   * <p> The created router is cached, calling this method again with the same interface returns
+   * the same instance as long as it's still referenced.
+   *
    * @param router router interface
    * @param <T> type of router
    * @return an instance of given router
    */
   @SuppressWarnings("unchecked") public <T> T create(final Class<T> router) {
+    long start = stats != null ? System.nanoTime() : 0;
+    synchronized (routerCache) {
+      WeakReference<Object> reference = routerCache.get(router);
+      Object cached = reference != null ? reference.get() : null;
+      if (cached != null) {
+        if (stats != null) {
+          stats.routerCacheHit();
+        }
+        return (T) cached;
+      }
+    }
+
     Utils.validateRouterInterface(router);
 
+    T result = createGenerated(router);
+    if (validateExecutor != null) {
+      warmUpOnce(router, result);
+    }
+    if (result == null) {
+      result = createProxy(router);
+    }
+
+    synchronized (routerCache) {
+      /* another thread may have created the same router in the meantime */
+      WeakReference<Object> reference = routerCache.get(router);
+      Object cached = reference != null ? reference.get() : null;
+      if (cached != null) {
+        return (T) cached;
+      }
+      routerCache.put(router, new WeakReference<Object>(result));
+    }
+
+    if (stats != null) {
+      stats.routerCreated(router, start);
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked") private <T> T createProxy(Class<T> router) {
+    final RouterMethodTable routerMethodTable = new RouterMethodTable(this, router);
     return (T) Proxy.newProxyInstance(router.getClassLoader(), new Class<?>[] { router },
         new InvocationHandler() {
           @Override public Object invoke(Object proxy, Method method, Object[] args)
@@ -90,16 +217,339 @@ public final class Routine {
               return method.invoke(this, args);
             }
 
-            RouterMethod routerMethod = loadRouterMethod(method);
-            RouterCall routerCall = new RouterCall<>(routerMethod, interceptors, filters, args);
-            return routerMethod.adapter.adapt(routerCall);
+            long start = dispatchStarted();
+            return Routine.this.invoke(routerMethodTable.get(method), args, start);
+          }
+        });
+  }
+
+  /**
+   * Parse every declared method of {@code router} in parallel on {@code executor} and cache the
+   * results, so the first navigation of each method doesn't pay for parsing and adapter lookup.
+   * This method blocks until all methods are parsed, so it must not be called on one of the
+   * threads of {@code executor}.
+   *
+   * @param router router interface
+   * @param executor executor to parse methods on
+   * @throws IllegalArgumentException with all validation errors of the router if any
+   */
+  public void warmUp(Class<?> router, Executor executor) {
+    checkNotNull(executor, "executor == null");
+    Utils.validateRouterInterface(router);
+    warmUp(router, createGenerated(router), executor);
+  }
+
+  /**
+   * Warm up {@code router} on the validate executor, only once for each router. This blocks until
+   * the warm-up, which may be started by another thread, is finished.
+   *
+   * @param router router interface
+   * @param generated generated router, or null if not existed
+   */
+  private void warmUpOnce(final Class<?> router, final Object generated) {
+    FutureTask<Void> task;
+    boolean owner = false;
+    synchronized (warmUps) {
+      task = warmUps.get(router);
+      if (task == null) {
+        task = new FutureTask<>(new Callable<Void>() {
+          @Override public Void call() throws Exception {
+            warmUp(router, generated, validateExecutor);
+            return null;
           }
         });
+        warmUps.put(router, task);
+        owner = true;
+      }
+    }
+
+    if (owner) {
+      task.run();
+    }
+
+    try {
+      task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while warming up " + router.getName(), e);
+    } catch (ExecutionException e) {
+      /* a failed warm-up is not remembered, the next create validates again */
+      synchronized (warmUps) {
+        if (warmUps.get(router) == task) {
+          warmUps.remove(router);
+        }
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Unable to warm up " + router.getName(), cause);
+    }
+  }
+
+  private void warmUp(Class<?> router, Object generated, Executor executor) {
+    final List<Object> methods = new ArrayList<>();
+    if (generated instanceof GeneratedRouter) {
+      Collections.addAll(methods, ((GeneratedRouter) generated).methodSpecs);
+    } else {
+      Collections.addAll(methods, Utils.routerMethods(router));
+    }
+
+    final CountDownLatch latch = new CountDownLatch(methods.size());
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    for (final Object method : methods) {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            if (method instanceof MethodSpec) {
+              loadRouterMethod((MethodSpec) method);
+            } else {
+              loadRouterMethod((Method) method);
+            }
+          } catch (Throwable e) {
+            errors.add(e);
+          } finally {
+            latch.countDown();
+          }
+        }
+      });
+    }
+
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while warming up " + router.getName(), e);
+    }
+
+    if (errors.isEmpty()) {
+      return;
+    }
+
+    /* aggregate all the errors into one report */
+    StringBuilder message = new StringBuilder();
+    message.append("Routine validation failed for ")
+        .append(router.getName())
+        .append(" with ")
+        .append(errors.size())
+        .append(" error(s):");
+    for (int i = 0; i < errors.size(); i++) {
+      message.append("\n  ").append(i + 1).append(") ").append(errors.get(i).getMessage());
+    }
+    throw new IllegalArgumentException(message.toString(), errors.get(0));
+  }
+
+  /**
+   * Create the router generated by {@code routine-compiler} if existed.
+   *
+   * @param router router interface
+   * @param <T> type of router
+   * @return an instance of generated router, or null if not found
+   */
+  @SuppressWarnings("unchecked") private <T> T createGenerated(Class<T> router) {
+    Class<?> generatedClass;
+    try {
+      generatedClass =
+          Class.forName(router.getName() + GeneratedRouter.SUFFIX, true, router.getClassLoader());
+    } catch (ClassNotFoundException ignore) {
+      return null;
+    }
+
+    if (!router.isAssignableFrom(generatedClass)) {
+      return null;
+    }
+
+    try {
+      return (T) generatedClass.getConstructor(Routine.class).newInstance(this);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException("Unable to create " + generatedClass.getName(), cause);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("Unable to create " + generatedClass.getName(), e);
+    } catch (InstantiationException e) {
+      throw new IllegalStateException("Unable to create " + generatedClass.getName(), e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Unable to create " + generatedClass.getName(), e);
+    }
+  }
+
+  /**
+   * Returns a snapshot of recorded startup stats.
+   *
+   * @return {@link RoutineStats}
+   * @throws IllegalStateException if stats are not enabled by {@link Builder#recordStats(boolean)}
+   */
+  public RoutineStats stats() {
+    if (stats == null) {
+      throw new IllegalStateException("Stats are not recorded, enable with recordStats(true).");
+    }
+    return stats.snapshot();
+  }
+
+  /**
+   * Returns the time when a router method is invoked, it's only read if there's an event listener.
+   *
+   * @return start time in nanoseconds
+   */
+  long dispatchStarted() {
+    return eventListenerFactory != null ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Invoke given {@link RouterMethod} and adapt the call into the return type of router.
+   *
+   * @param routerMethod {@link RouterMethod}
+   * @param args arguments of this invocation
+   * @param dispatchStart time returned by {@link #dispatchStarted()}
+   * @return adapted result
+   */
+  <T> T invoke(RouterMethod<T> routerMethod, Object[] args, long dispatchStart) {
+    return routerMethod.adapter.adapt(
+        new RouterCall<>(this, routerMethod, args, dispatchStart));
+  }
+
+  /**
+   * Record the interceptor which made a router call time out if stats are enabled.
+   *
+   * @param interceptor interceptor at fault, may be null
+   */
+  void interceptorTimedOut(Interceptor interceptor) {
+    if (stats != null) {
+      stats.interceptorTimedOut(interceptor);
+    }
+  }
+
+  /**
+   * Returns the executor to run {@link RouterCall#enqueue(RouterCall.Callback)} on, a cached
+   * thread pool will be created on first use if not set.
+   *
+   * @return {@link Executor}
+   */
+  Executor callExecutor() {
+    Executor result = callExecutor;
+    if (result == null) {
+      synchronized (this) {
+        result = callExecutor;
+        if (result == null) {
+          result = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "Routine Dispatcher");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+          callExecutor = result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Notify observers with a snapshot of given router in background, the intent is copied since
+   * the resolver may still hold the intent of started router.
+   *
+   * @param router final {@link Router} after interceptors, which has been started
+   */
+  void notifyObservers(Router router) {
+    if (observers.isEmpty()) {
+      return;
+    }
+
+    final Router snapshot = router.newBuilder().intent(new Intent(router.intent())).build();
+    observerExecutor().execute(new Runnable() {
+      @Override public void run() {
+        for (RouterObserver observer : observers) {
+          observer.onRouter(snapshot);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the executor to notify observers on. A single thread with a bounded queue will be
+   * created on first use if not set, routers are dropped when the queue is full.
+   *
+   * @return {@link Executor}
+   */
+  private Executor observerExecutor() {
+    Executor result = observerExecutor;
+    if (result == null) {
+      synchronized (this) {
+        result = observerExecutor;
+        if (result == null) {
+          ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+              new ArrayBlockingQueue<Runnable>(OBSERVER_QUEUE_SIZE), new ThreadFactory() {
+            @Override public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "Routine Observer");
+              thread.setDaemon(true);
+              return thread;
+            }
+          }, new ThreadPoolExecutor.DiscardPolicy());
+          executor.allowCoreThreadTimeOut(true);
+          result = executor;
+          observerExecutor = result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the {@link Matcher} built by all filters. Filters are evaluated on first use and the
+   * matcher is shared by all calls until {@link #invalidateFilters()} is called.
+   *
+   * @return {@link Matcher}
+   */
+  Matcher matcher() {
+    Matcher result = matcher;
+    if (result != null) {
+      return result;
+    }
+
+    synchronized (matcherLock) {
+      result = matcher;
+      if (result == null) {
+        Matcher empty = new Matcher.Builder().build();
+        result = new FilterChain(filters, 0, empty).proceed(empty);
+        matcher = result;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Discard the {@link Matcher} built by filters, so filters will be evaluated again on next
+   * navigation. Call this when the routes provided by filters change at runtime.
+   */
+  public void invalidateFilters() {
+    synchronized (matcherLock) {
+      matcher = null;
+    }
+  }
+
+  /**
+   * Discard the cached resolution of pages matched by filters, which is otherwise only discarded
+   * when the package of app changes. Call this after enabling or disabling an activity without
+   * the broadcast of package change.
+   */
+  public void invalidateResolutions() {
+    resolutionCache.invalidate();
   }
 
   /**
    * Returns the {@link Adapter} for {@code returnType} from the available {@linkplain
-   * #adapterFactories factories}.
+   * #adapterFactories factories}. Adapters are cached by return type and annotations, the built-in
+   * annotations of routine are not passed to factories since they never affect the adapter.
    *
    * @param returnType return type
    * @param annotations annotations
@@ -108,16 +558,66 @@ public final class Routine {
   Adapter<?> adapter(Type returnType, Annotation[] annotations) {
     checkNotNull(returnType, "returnType == null");
     checkNotNull(annotations, "annotations == null");
+    if (stats == null) {
+      return findAdapter(returnType, annotations);
+    }
+
+    long start = stats.adapterStarted();
+    try {
+      return findAdapter(returnType, annotations);
+    } finally {
+      stats.adapterFinished(start);
+    }
+  }
+
+  private Adapter<?> findAdapter(Type returnType, Annotation[] annotations) {
+    AdapterKey key = new AdapterKey(returnType, adapterAnnotations(annotations));
+    Adapter<?> cached = adapterCache.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
     for (Adapter.Factory adapterFactory : adapterFactories) {
-      Adapter<?> adapter = adapterFactory.get(returnType, annotations, this);
+      Adapter<?> adapter = adapterFactory.get(returnType, key.annotations, this);
       if (adapter != null) {
-        return adapter;
+        /* keep the first one if another thread has found an adapter in the meantime */
+        Adapter<?> existing = adapterCache.putIfAbsent(key, adapter);
+        return existing != null ? existing : adapter;
       }
     }
 
     throw new IllegalArgumentException("Could not locate adapter for " + returnType + ".");
   }
 
+  /**
+   * Strip the built-in annotations of routine, such as {@link com.anbillon.routine.app.PageName
+   * PageName}, which differ in almost every method and would defeat the adapter cache.
+   */
+  private static Annotation[] adapterAnnotations(Annotation[] annotations) {
+    int count = 0;
+    for (Annotation annotation : annotations) {
+      if (!isBuiltInAnnotation(annotation)) {
+        count++;
+      }
+    }
+    if (count == annotations.length) {
+      return annotations;
+    }
+
+    Annotation[] result = new Annotation[count];
+    int index = 0;
+    for (Annotation annotation : annotations) {
+      if (!isBuiltInAnnotation(annotation)) {
+        result[index++] = annotation;
+      }
+    }
+    return result;
+  }
+
+  static boolean isBuiltInAnnotation(Annotation annotation) {
+    return annotation.annotationType().getName().startsWith(BUILT_IN_ANNOTATION_PREFIX);
+  }
+
   /**
    * Returns the {@link Resolver} from available {@linkplain #resolverFactories factories}.
    *
@@ -126,6 +626,19 @@ public final class Routine {
    * @return {@link Resolver}
    */
   <T> Resolver resolver(T caller) {
+    if (stats == null) {
+      return findResolver(caller);
+    }
+
+    long start = System.nanoTime();
+    try {
+      return findResolver(caller);
+    } finally {
+      stats.resolverFinished(start);
+    }
+  }
+
+  private <T> Resolver findResolver(T caller) {
     for (Resolver.Factory factory : resolverFactories) {
       Resolver resolver = factory.create(caller);
       if (resolver != null) {
@@ -136,34 +649,108 @@ public final class Routine {
     throw new IllegalArgumentException("No resolver found, caller type is not supported.");
   }
 
+  /**
+   * Parse {@link RouterMethod} of given method. Persisted metadata will be used if existed, which
+   * avoids annotation reflection, otherwise the method will be parsed by reflection and persisted.
+   *
+   * @param method {@link Method}
+   * @return {@link RouterMethod}
+   */
+  private RouterMethod<?> parseRouterMethod(Method method) {
+    if (metadataCache == null) {
+      return new RouterMethod.Builder<>(this, method).build();
+    }
+
+    MethodMetadataCache.Metadata metadata = metadataCache.get(method.getDeclaringClass());
+    MethodSpec spec = metadata.get(method);
+    if (spec != null) {
+      try {
+        return RouterMethod.parse(this, spec);
+      } catch (RuntimeException ignore) {
+        /* fall back to reflection */
+      }
+    }
+
+    RouterMethod<?> routerMethod = new RouterMethod.Builder<>(this, method).build();
+    metadata.put(method, routerMethod);
+    return routerMethod;
+  }
+
   /**
    * Load {@link RouterMethod} origin cache. Create a new one if there's no result.
    *
    * @param method {@link Method}
    * @return {@link RouterMethod}
    */
-  RouterMethod loadRouterMethod(Method method) {
-    RouterMethod result = routerMethodCache.get(method);
-    if (result != null) {
-      return result;
+  RouterMethod<?> loadRouterMethod(Method method) {
+    if (stats != null) {
+      stats.methodLookup();
     }
+    return routerMethodCache.get(method);
+  }
 
-    synchronized (routerMethodCache) {
-      result = routerMethodCache.get(method);
-      if (result == null) {
-        result = new RouterMethod.Builder(this, method).build();
-        routerMethodCache.put(method, result);
+  /**
+   * Load {@link RouterMethod} of generated router origin cache. Create a new one if there's no
+   * result.
+   *
+   * @param spec {@link MethodSpec}
+   * @return {@link RouterMethod}
+   */
+  RouterMethod<?> loadRouterMethod(MethodSpec spec) {
+    if (stats != null) {
+      stats.methodLookup();
+    }
+    return specMethodCache.get(spec);
+  }
+
+  private static final class MainThreadExecutor implements Executor {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override public void execute(Runnable runnable) {
+      handler.post(runnable);
+    }
+  }
+
+  private static final class AdapterKey {
+    final Type returnType;
+    final Annotation[] annotations;
+
+    AdapterKey(Type returnType, Annotation[] annotations) {
+      this.returnType = returnType;
+      this.annotations = annotations;
+    }
+
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof AdapterKey)) {
+        return false;
       }
+
+      AdapterKey that = (AdapterKey) other;
+      return returnType.equals(that.returnType) && Arrays.equals(annotations, that.annotations);
     }
 
-    return result;
+    @Override public int hashCode() {
+      return returnType.hashCode() * 31 + Arrays.hashCode(annotations);
+    }
   }
 
   public static final class Builder {
     private List<Interceptor> interceptors = new ArrayList<>();
+    private List<Interceptor.Scope> interceptorScopes = new ArrayList<>();
     private List<Filter> filters = new ArrayList<>();
     private List<Adapter.Factory> adapterFactories = new ArrayList<>();
     private List<Resolver.Factory> resolverFactories = new ArrayList<>();
+    private Executor validateExecutor;
+    private MethodMetadataCache metadataCache;
+    private boolean reuseBuilders;
+    private boolean recordStats;
+    private Executor callExecutor;
+    private long preparedRouterTtlNanos = TimeUnit.SECONDS.toNanos(5);
+    private List<RouterObserver> observers = new ArrayList<>();
+    private Executor observerExecutor;
+    private EventListener.Factory eventListenerFactory;
+    private long callTimeoutNanos;
+    private TimeoutFallback timeoutFallback;
 
     public Builder() {
       adapterFactories.add(new DefaultAdapterFactories());
@@ -200,6 +787,46 @@ public final class Routine {
      */
     public Builder addInterceptor(Interceptor interceptor) {
       interceptors.add(interceptor);
+      interceptorScopes.add(null);
+      return this;
+    }
+
+    /**
+     * Add one {@link Interceptor} which only applies to routers in given scope. Routine composes
+     * the pipeline of each scope ahead, so an interceptor out of scope is never invoked.
+     *
+     * @param interceptor {@link Interceptor}
+     * @param scope {@link Interceptor.Scope}
+     * @return this object for further chaining
+     */
+    public Builder addInterceptor(Interceptor interceptor, Interceptor.Scope scope) {
+      interceptors.add(interceptor);
+      interceptorScopes.add(checkNotNull(scope, "scope == null"));
+      return this;
+    }
+
+    /**
+     * Add one {@link RouterObserver} into routine. Observers get the final router after all
+     * interceptors in background once it's started, so read only work such as logging never delays
+     * navigation.
+     *
+     * @param observer {@link RouterObserver}
+     * @return this object for further chaining
+     */
+    public Builder addObserver(RouterObserver observer) {
+      observers.add(checkNotNull(observer, "observer == null"));
+      return this;
+    }
+
+    /**
+     * Set the executor to notify observers on. If not set, a single thread with a bounded queue
+     * will be used, routers are dropped when the queue is full.
+     *
+     * @param executor executor to notify observers on
+     * @return this object for further chaining
+     */
+    public Builder observerExecutor(Executor executor) {
+      this.observerExecutor = checkNotNull(executor, "executor == null");
       return this;
     }
 
@@ -214,6 +841,143 @@ public final class Routine {
       return this;
     }
 
+    /**
+     * When set, {@link #create} parses and validates all methods of the router on given executor
+     * before returning, instead of parsing each method lazily on its first call. The warm-up runs
+     * once for each router, so {@link #create} blocks on the first call for a router, and racing
+     * calls for the same router wait for that warm-up instead of starting another one. A failed
+     * warm-up is run again by the next {@link #create}.
+     *
+     * @param executor executor to parse methods on
+     * @return this object for further chaining
+     * @see Routine#warmUp(Class, Executor)
+     */
+    public Builder validateEagerly(Executor executor) {
+      this.validateExecutor = checkNotNull(executor, "executor == null");
+      return this;
+    }
+
+    /**
+     * Persist parsed router method metadata in the cache directory of given context. On next cold
+     * start, router methods are created from the persisted metadata instead of annotation
+     * reflection. The metadata is keyed by app version and the signatures of each router, and
+     * falls back to reflection if anything can not be read. Adapter factories receive an empty
+     * annotation array for methods created from persisted metadata.
+     *
+     * @param context context to use
+     * @return this object for further chaining
+     */
+    public Builder metadataCache(Context context) {
+      checkNotNull(context, "context == null");
+      String appVersion;
+      try {
+        PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+        appVersion = info.versionCode + "-" + info.lastUpdateTime;
+      } catch (PackageManager.NameNotFoundException e) {
+        return this;
+      }
+
+      this.metadataCache =
+          new MethodMetadataCache(new File(context.getCacheDir(), "routine"), appVersion);
+      return this;
+    }
+
+    /**
+     * Reuse the intermediate builders of each thread when creating routers, which cuts the
+     * allocations of each call for apps creating many routers, such as prefetching on scroll. The
+     * created {@link Router} and its intent are never reused.
+     *
+     * @param reuseBuilders reuse builders or not, false by default
+     * @return this object for further chaining
+     */
+    public Builder reuseBuilders(boolean reuseBuilders) {
+      this.reuseBuilders = reuseBuilders;
+      return this;
+    }
+
+    /**
+     * Record the time spent in creating routers, parsing router methods, adapter and resolver
+     * lookups, and the hit counts of router caches. Get them with {@link Routine#stats()}.
+     *
+     * @param recordStats record stats or not, false by default
+     * @return this object for further chaining
+     */
+    public Builder recordStats(boolean recordStats) {
+      this.recordStats = recordStats;
+      return this;
+    }
+
+    /**
+     * Set the executor to run interceptors of {@link RouterCall#enqueue(RouterCall.Callback)} on.
+     * If not set, a cached thread pool will be used.
+     *
+     * @param executor executor to run calls on
+     * @return this object for further chaining
+     */
+    public Builder callExecutor(Executor executor) {
+      this.callExecutor = checkNotNull(executor, "executor == null");
+      return this;
+    }
+
+    /**
+     * Set how long a router prepared by {@link RouterCall#prepare()} can be used, 5 seconds by
+     * default.
+     *
+     * @param ttl time to live
+     * @param unit unit of {@code ttl}
+     * @return this object for further chaining
+     */
+    public Builder preparedRouterTtl(long ttl, TimeUnit unit) {
+      if (ttl < 0) {
+        throw new IllegalArgumentException("ttl < 0");
+      }
+      this.preparedRouterTtlNanos = checkNotNull(unit, "unit == null").toNanos(ttl);
+      return this;
+    }
+
+    /**
+     * Set the factory of {@link EventListener} to observe the phases of each router call, such as
+     * {@link TimingEventListener}. Nothing is recorded if not set.
+     *
+     * @param factory {@link EventListener.Factory}
+     * @return this object for further chaining
+     */
+    public Builder eventListenerFactory(EventListener.Factory factory) {
+      this.eventListenerFactory = checkNotNull(factory, "factory == null");
+      return this;
+    }
+
+    /**
+     * Set the default timeout of interceptors for each router call, 0 means no timeout which is
+     * the default. When a call is executed synchronously with a timeout, its interceptors run on
+     * the call executor while the caller waits, so a blocked interceptor can't stall main thread
+     * longer than the timeout. A call which times out fails with {@link RoutineTimeoutException},
+     * or starts the router of {@link #timeoutFallback(TimeoutFallback)} if set.
+     *
+     * @param timeout timeout of interceptors
+     * @param unit unit of {@code timeout}
+     * @return this object for further chaining
+     * @see RouterCall#timeout(long, TimeUnit)
+     */
+    public Builder callTimeout(long timeout, TimeUnit unit) {
+      if (timeout < 0) {
+        throw new IllegalArgumentException("timeout < 0");
+      }
+      this.callTimeoutNanos = checkNotNull(unit, "unit == null").toNanos(timeout);
+      return this;
+    }
+
+    /**
+     * Set the fallback to create the router for calls which time out.
+     *
+     * @param fallback {@link TimeoutFallback}
+     * @return this object for further chaining
+     */
+    public Builder timeoutFallback(TimeoutFallback fallback) {
+      this.timeoutFallback = checkNotNull(fallback, "fallback == null");
+      return this;
+    }
+
     public Routine build() {
       return new Routine(this);
     }
@@ -21,6 +21,16 @@ package com.anbillon.routine;
  *
  * @author Vincent Cheung (coolingfall@gmail.com)
  */
-public final class RoutineException extends Exception {
+public class RoutineException extends Exception {
 
+  public RoutineException() {
+  }
+
+  public RoutineException(String message) {
+    super(message);
+  }
+
+  public RoutineException(String message, Throwable cause) {
+    super(message, cause);
+  }
 }
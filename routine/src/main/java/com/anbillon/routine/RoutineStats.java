@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A snapshot of startup costs recorded by {@link Routine}, enable it with {@link
+ * Routine.Builder#recordStats(boolean)}. All times are in nanoseconds. It's mainly used to catch
+ * regressions of cold start in tests.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class RoutineStats {
+  private final List<RouterStats> routers;
+  private final List<MethodStats> methods;
+  private final long routerCacheHits;
+  private final long routerCacheMisses;
+  private final long methodCacheHits;
+  private final long methodCacheMisses;
+  private final long adapterLookups;
+  private final long adapterNanos;
+  private final long resolverLookups;
+  private final long resolverNanos;
+  private final Map<String, Long> interceptorTimeouts;
+
+  RoutineStats(List<RouterStats> routers, List<MethodStats> methods, long routerCacheHits,
+      long routerCacheMisses, long methodCacheHits, long methodCacheMisses, long adapterLookups,
+      long adapterNanos, long resolverLookups, long resolverNanos,
+      Map<String, Long> interceptorTimeouts) {
+    this.routers = Collections.unmodifiableList(routers);
+    this.methods = Collections.unmodifiableList(methods);
+    this.routerCacheHits = routerCacheHits;
+    this.routerCacheMisses = routerCacheMisses;
+    this.methodCacheHits = methodCacheHits;
+    this.methodCacheMisses = methodCacheMisses;
+    this.adapterLookups = adapterLookups;
+    this.adapterNanos = adapterNanos;
+    this.resolverLookups = resolverLookups;
+    this.resolverNanos = resolverNanos;
+    this.interceptorTimeouts = Collections.unmodifiableMap(interceptorTimeouts);
+  }
+
+  /**
+   * Stats of each router interface created by {@link Routine#create(Class)}.
+   */
+  public List<RouterStats> routers() {
+    return routers;
+  }
+
+  /**
+   * Stats of each parsed router method.
+   */
+  public List<MethodStats> methods() {
+    return methods;
+  }
+
+  /**
+   * Number of {@link Routine#create(Class)} calls which returned a cached router.
+   */
+  public long routerCacheHits() {
+    return routerCacheHits;
+  }
+
+  /**
+   * Number of {@link Routine#create(Class)} calls which created a new router.
+   */
+  public long routerCacheMisses() {
+    return routerCacheMisses;
+  }
+
+  /**
+   * Number of router method lookups which found a parsed router method.
+   */
+  public long methodCacheHits() {
+    return methodCacheHits;
+  }
+
+  /**
+   * Number of router method lookups which parsed the router method.
+   */
+  public long methodCacheMisses() {
+    return methodCacheMisses;
+  }
+
+  /**
+   * Number of adapter lookups.
+   */
+  public long adapterLookups() {
+    return adapterLookups;
+  }
+
+  /**
+   * Total time spent in adapter lookups.
+   */
+  public long adapterNanos() {
+    return adapterNanos;
+  }
+
+  /**
+   * Number of resolver lookups, one for each router call.
+   */
+  public long resolverLookups() {
+    return resolverLookups;
+  }
+
+  /**
+   * Total time spent in resolver lookups.
+   */
+  public long resolverNanos() {
+    return resolverNanos;
+  }
+
+  /**
+   * Number of router calls which timed out, keyed by the class name of interceptor at fault.
+   */
+  public Map<String, Long> interceptorTimeouts() {
+    return interceptorTimeouts;
+  }
+
+  @Override public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(Locale.US,
+        "RoutineStats{routers: %d hit(s) %d miss(es), methods: %d hit(s) %d miss(es), "
+            + "adapters: %d in %.3fms, resolvers: %d in %.3fms}", routerCacheHits,
+        routerCacheMisses, methodCacheHits, methodCacheMisses, adapterLookups,
+        adapterNanos / 1e6, resolverLookups, resolverNanos / 1e6));
+    for (Map.Entry<String, Long> entry : interceptorTimeouts.entrySet()) {
+      builder.append("\n  timeout ").append(entry.getKey()).append(": ").append(entry.getValue());
+    }
+    for (RouterStats router : routers) {
+      builder.append("\n  ").append(router);
+    }
+    for (MethodStats method : methods) {
+      builder.append("\n  ").append(method);
+    }
+    return builder.toString();
+  }
+
+  public static final class RouterStats {
+    private final String name;
+    private final long createNanos;
+
+    RouterStats(String name, long createNanos) {
+      this.name = name;
+      this.createNanos = createNanos;
+    }
+
+    /**
+     * Name of router interface.
+     */
+    public String name() {
+      return name;
+    }
+
+    /**
+     * Time spent in creating the router, including eager validation if enabled.
+     */
+    public long createNanos() {
+      return createNanos;
+    }
+
+    @Override public String toString() {
+      return String.format(Locale.US, "%s: created in %.3fms", name, createNanos / 1e6);
+    }
+  }
+
+  public static final class MethodStats {
+    private final String name;
+    private final long parseNanos;
+    private final long adapterNanos;
+
+    MethodStats(String name, long parseNanos, long adapterNanos) {
+      this.name = name;
+      this.parseNanos = parseNanos;
+      this.adapterNanos = adapterNanos;
+    }
+
+    /**
+     * Name of method with its declaring class and parameter types, e.g.
+     * com.example.Navigator.navigateToDemo(android.content.Context).
+     */
+    public String name() {
+      return name;
+    }
+
+    /**
+     * Time spent in parsing the method, including adapter lookup.
+     */
+    public long parseNanos() {
+      return parseNanos;
+    }
+
+    /**
+     * Time spent in adapter lookup of this method.
+     */
+    public long adapterNanos() {
+      return adapterNanos;
+    }
+
+    @Override public String toString() {
+      return String.format(Locale.US, "%s: parsed in %.3fms, adapter in %.3fms", name,
+          parseNanos / 1e6, adapterNanos / 1e6);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import android.support.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RoutineException thrown when the interceptors of a router call exceed its timeout.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ * @see Routine.Builder#callTimeout(long, TimeUnit)
+ * @see RouterCall#timeout(long, TimeUnit)
+ */
+public final class RoutineTimeoutException extends RoutineException {
+  private final Interceptor interceptor;
+  private final long timeoutNanos;
+
+  RoutineTimeoutException(Interceptor interceptor, long timeoutNanos) {
+    super("Router call timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+        + "ms in interceptor " + interceptor);
+    this.interceptor = interceptor;
+    this.timeoutNanos = timeoutNanos;
+  }
+
+  /**
+   * The interceptor which was running when the timeout elapsed.
+   */
+  @Nullable public Interceptor interceptor() {
+    return interceptor;
+  }
+
+  /**
+   * The timeout of the call in nanoseconds.
+   */
+  public long timeoutNanos() {
+    return timeoutNanos;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the timings of {@link Routine} when stats are enabled, see {@link RoutineStats}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class StatsRecorder {
+  private final Map<String, RoutineStats.RouterStats> routers = new ConcurrentHashMap<>();
+  private final Map<String, RoutineStats.MethodStats> methods = new ConcurrentHashMap<>();
+  private final AtomicLong routerCacheHits = new AtomicLong();
+  private final AtomicLong routerCacheMisses = new AtomicLong();
+  private final AtomicLong methodLookups = new AtomicLong();
+  private final AtomicLong methodCacheMisses = new AtomicLong();
+  private final AtomicLong adapterLookups = new AtomicLong();
+  private final AtomicLong adapterNanos = new AtomicLong();
+  private final AtomicLong resolverLookups = new AtomicLong();
+  private final AtomicLong resolverNanos = new AtomicLong();
+  private final ConcurrentHashMap<String, AtomicLong> interceptorTimeouts =
+      new ConcurrentHashMap<>();
+  private final ThreadLocal<Parsing> parsing = new ThreadLocal<Parsing>() {
+    @Override protected Parsing initialValue() {
+      return new Parsing();
+    }
+  };
+
+  void routerCacheHit() {
+    routerCacheHits.incrementAndGet();
+  }
+
+  void routerCreated(Class<?> router, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    routerCacheMisses.incrementAndGet();
+    routers.put(router.getName(), new RoutineStats.RouterStats(router.getName(), nanos));
+  }
+
+  void methodLookup() {
+    methodLookups.incrementAndGet();
+  }
+
+  /**
+   * Mark the start of parsing one router method on current thread.
+   *
+   * @return start time in nanoseconds
+   */
+  long parseStarted() {
+    Parsing current = parsing.get();
+    current.adapterNanos = 0;
+    return System.nanoTime();
+  }
+
+  void parseFinished(String name, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    methodCacheMisses.incrementAndGet();
+    methods.put(name, new RoutineStats.MethodStats(name, nanos, parsing.get().adapterNanos));
+  }
+
+  /**
+   * Mark the start of one adapter lookup on current thread.
+   *
+   * @return start time in nanoseconds
+   */
+  long adapterStarted() {
+    parsing.get().adapterDepth++;
+    return System.nanoTime();
+  }
+
+  void adapterFinished(long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    Parsing current = parsing.get();
+    /* adapter factories may look up a delegate adapter, only count the outermost lookup */
+    if (--current.adapterDepth == 0) {
+      current.adapterNanos += nanos;
+      adapterLookups.incrementAndGet();
+      adapterNanos.addAndGet(nanos);
+    }
+  }
+
+  void resolverFinished(long startNanos) {
+    resolverLookups.incrementAndGet();
+    resolverNanos.addAndGet(System.nanoTime() - startNanos);
+  }
+
+  void interceptorTimedOut(Interceptor interceptor) {
+    String name = interceptor == null ? "null" : interceptor.getClass().getName();
+    AtomicLong count = interceptorTimeouts.get(name);
+    if (count == null) {
+      AtomicLong created = new AtomicLong();
+      count = interceptorTimeouts.putIfAbsent(name, created);
+      if (count == null) {
+        count = created;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+  RoutineStats snapshot() {
+    List<RoutineStats.RouterStats> routerStats = new ArrayList<>(routers.values());
+    List<RoutineStats.MethodStats> methodStats = new ArrayList<>(methods.values());
+    long lookups = methodLookups.get();
+    long misses = methodCacheMisses.get();
+    Map<String, Long> timeouts = new LinkedHashMap<>();
+    for (Map.Entry<String, AtomicLong> entry : interceptorTimeouts.entrySet()) {
+      timeouts.put(entry.getKey(), entry.getValue().get());
+    }
+    return new RoutineStats(routerStats, methodStats, routerCacheHits.get(),
+        routerCacheMisses.get(), lookups - misses, misses, adapterLookups.get(), adapterNanos.get(),
+        resolverLookups.get(), resolverNanos.get(), timeouts);
+  }
+
+  private static final class Parsing {
+    long adapterNanos;
+    int adapterDepth;
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+/**
+ * Provides the router to start instead when the interceptors of a router call time out, such as
+ * an error page or the given router which has been resolved without user interceptors.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ * @see Routine.Builder#timeoutFallback(TimeoutFallback)
+ */
+public interface TimeoutFallback {
+  /**
+   * Create the router to use for a timed out call. The given router is built on a copy of the
+   * intent taken before user interceptors ran, and resolved by built-in interceptors, so it can
+   * be started as it is.
+   *
+   * @param router origin router of the call resolved by built-in interceptors only
+   * @param e exception with the interceptor at fault
+   * @return router to use instead, never null
+   * @throws RoutineException to fail the call
+   */
+  Router fallback(Router router, RoutineTimeoutException e) throws RoutineException;
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017 Tourbillon Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anbillon.routine;
+
+import android.content.Intent;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.anbillon.routine.Utils.checkNotNull;
+
+/**
+ * An {@link EventListener} which records the duration of each phase in nanoseconds and reports
+ * them when the call ends. The keys of durations are {@link #DISPATCH}, {@link #TO_ROUTER}, {@link
+ * #RESOLVE}, {@link #MATCH}, {@link #START_ACTIVITY}, {@link #CALL}, and the class name of each
+ * interceptor.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class TimingEventListener extends EventListener {
+  public static final String DISPATCH = "dispatch";
+  public static final String TO_ROUTER = "toRouter";
+  public static final String RESOLVE = "resolve";
+  public static final String MATCH = "match";
+  public static final String START_ACTIVITY = "startActivity";
+  public static final String CALL = "call";
+
+  private final Reporter reporter;
+  /* guarded by this, the chain abandoned by a timeout still ends interceptors on its thread */
+  private final Map<String, Long> durations = new LinkedHashMap<>();
+  private final Deque<Long> interceptorStarts = new ArrayDeque<>();
+  private long callStart;
+  private long toRouterStart;
+  private long resolveStart;
+  private long matchStart;
+  private long startActivityStart;
+
+  private TimingEventListener(Reporter reporter) {
+    this.reporter = reporter;
+  }
+
+  /**
+   * Create a factory of {@link TimingEventListener}.
+   *
+   * @param reporter reporter to receive durations of each call
+   * @return {@link EventListener.Factory}
+   */
+  public static EventListener.Factory factory(final Reporter reporter) {
+    checkNotNull(reporter, "reporter == null");
+    return new EventListener.Factory() {
+      @Override public EventListener create(RouterCall<?> call) {
+        return new TimingEventListener(reporter);
+      }
+    };
+  }
+
+  @Override public void callStart(RouterCall<?> call, long dispatchNanos) {
+    record(DISPATCH, dispatchNanos);
+    callStart = System.nanoTime();
+  }
+
+  @Override public void toRouterStart(RouterCall<?> call) {
+    toRouterStart = System.nanoTime();
+  }
+
+  @Override public void toRouterEnd(RouterCall<?> call, Router router) {
+    record(TO_ROUTER, System.nanoTime() - toRouterStart);
+  }
+
+  @Override public synchronized void interceptorStart(RouterCall<?> call,
+      Interceptor interceptor) {
+    interceptorStarts.push(System.nanoTime());
+  }
+
+  @Override public synchronized void interceptorEnd(RouterCall<?> call, Interceptor interceptor) {
+    /* the start is gone if the call has been reported, e.g. timed out */
+    Long start = interceptorStarts.pollFirst();
+    if (start != null) {
+      record(interceptor.getClass().getName(), System.nanoTime() - start);
+    }
+  }
+
+  @Override public void resolveStart(RouterCall<?> call, Router router) {
+    resolveStart = System.nanoTime();
+  }
+
+  @Override public void resolveEnd(RouterCall<?> call, Intent intent) {
+    record(RESOLVE, System.nanoTime() - resolveStart);
+  }
+
+  @Override public void matchStart(RouterCall<?> call, String schemeUrl) {
+    matchStart = System.nanoTime();
+  }
+
+  @Override public void matchEnd(RouterCall<?> call, Intent intent) {
+    record(MATCH, System.nanoTime() - matchStart);
+  }
+
+  @Override public void startActivityStart(RouterCall<?> call, Router router) {
+    startActivityStart = System.nanoTime();
+  }
+
+  @Override public void startActivityEnd(RouterCall<?> call, boolean started) {
+    record(START_ACTIVITY, System.nanoTime() - startActivityStart);
+  }
+
+  @Override public void callEnd(RouterCall<?> call) {
+    report(call);
+  }
+
+  @Override public void callFailed(RouterCall<?> call, RoutineException e) {
+    report(call);
+  }
+
+  private synchronized void record(String key, long nanos) {
+    Long previous = durations.get(key);
+    durations.put(key, previous != null ? previous + nanos : nanos);
+  }
+
+  private void report(RouterCall<?> call) {
+    Map<String, Long> result;
+    synchronized (this) {
+      record(CALL, System.nanoTime() - callStart);
+      result = Collections.unmodifiableMap(new LinkedHashMap<>(durations));
+      durations.clear();
+      interceptorStarts.clear();
+    }
+    reporter.report(call, result);
+  }
+
+  public interface Reporter {
+    /**
+     * Report the durations of a call in nanoseconds, a call may be reported more than once if it
+     * is executed again.
+     *
+     * @param call router call
+     * @param durations durations of each phase in order of occurrence
+     */
+    void report(RouterCall<?> call, Map<String, Long> durations);
+  }
+}
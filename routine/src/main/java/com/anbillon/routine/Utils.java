@@ -23,11 +23,14 @@ import android.os.Parcelable;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -80,6 +83,24 @@ final class Utils {
     }
   }
 
+  /**
+   * Returns the router methods declared by {@code router}, static and synthetic methods are
+   * excluded.
+   *
+   * @param router router interface
+   * @return declared router methods
+   */
+  static Method[] routerMethods(Class<?> router) {
+    List<Method> methods = new ArrayList<>();
+    for (Method method : router.getDeclaredMethods()) {
+      if (!Modifier.isStatic(method.getModifiers()) && !method.isSynthetic()) {
+        methods.add(method);
+      }
+    }
+
+    return methods.toArray(new Method[methods.size()]);
+  }
+
   /**
    * To check if there's unresolvable {@link Type}.
    *
@@ -220,4 +241,68 @@ final class Utils {
     int index = checkNotNull(schemeUrl, "schemeUrl == null").lastIndexOf("?");
     return index > 0 ? schemeUrl.substring(0, index) : schemeUrl;
   }
+
+  static final class ParameterizedTypeImpl implements ParameterizedType {
+    private final Type ownerType;
+    private final Type rawType;
+    private final Type[] typeArguments;
+
+    ParameterizedTypeImpl(Type ownerType, Type rawType, Type... typeArguments) {
+      this.ownerType = ownerType;
+      this.rawType = rawType;
+      this.typeArguments = typeArguments.clone();
+
+      for (Type typeArgument : this.typeArguments) {
+        checkNotNull(typeArgument, "typeArgument == null");
+        if (typeArgument instanceof Class<?> && ((Class<?>) typeArgument).isPrimitive()) {
+          throw new IllegalArgumentException();
+        }
+      }
+    }
+
+    @Override public Type[] getActualTypeArguments() {
+      return typeArguments.clone();
+    }
+
+    @Override public Type getRawType() {
+      return rawType;
+    }
+
+    @Override public Type getOwnerType() {
+      return ownerType;
+    }
+
+    @Override public boolean equals(Object other) {
+      if (!(other instanceof ParameterizedType)) {
+        return false;
+      }
+
+      ParameterizedType that = (ParameterizedType) other;
+      return rawType.equals(that.getRawType())
+          && (ownerType == null ? that.getOwnerType() == null
+          : ownerType.equals(that.getOwnerType()))
+          && Arrays.equals(typeArguments, that.getActualTypeArguments());
+    }
+
+    @Override public int hashCode() {
+      return Arrays.hashCode(typeArguments)
+          ^ rawType.hashCode()
+          ^ (ownerType != null ? ownerType.hashCode() : 0);
+    }
+
+    @Override public String toString() {
+      StringBuilder result = new StringBuilder(30 * (typeArguments.length + 1));
+      result.append(typeToString(rawType));
+      if (typeArguments.length == 0) return result.toString();
+      result.append("<").append(typeToString(typeArguments[0]));
+      for (int i = 1; i < typeArguments.length; i++) {
+        result.append(", ").append(typeToString(typeArguments[i]));
+      }
+      return result.append(">").toString();
+    }
+  }
+
+  static String typeToString(Type type) {
+    return type instanceof Class ? ((Class<?>) type).getName() : type.toString();
+  }
 }
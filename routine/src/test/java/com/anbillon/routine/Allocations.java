@@ -0,0 +1,43 @@
+package com.anbillon.routine;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures bytes allocated by the current thread, used by allocation benchmarks.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+final class Allocations {
+  private static final int WARM_UP = 2000;
+  private static final int ITERATIONS = 20000;
+
+  private Allocations() {
+    /* no instance */
+  }
+
+  /**
+   * Returns the average bytes allocated by one run of {@code task}, or -1 if the jvm can't tell.
+   */
+  static long bytesPerOperation(Task task) throws Exception {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+    long threadId = Thread.currentThread().getId();
+    for (int i = 0; i < WARM_UP; i++) {
+      task.run();
+    }
+
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < ITERATIONS; i++) {
+      task.run();
+    }
+    return (threadBean.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+  }
+
+  interface Task {
+    void run() throws Exception;
+  }
+}
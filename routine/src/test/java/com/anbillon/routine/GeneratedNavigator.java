@@ -0,0 +1,16 @@
+package com.anbillon.routine;
+
+import android.content.Context;
+import com.anbillon.routine.app.Caller;
+import com.anbillon.routine.app.Extra;
+import com.anbillon.routine.app.Page;
+
+/**
+ * A router whose {@code GeneratedNavigator_Routine} is generated by {@code routine-compiler}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public interface GeneratedNavigator {
+  @Page(TestActivity.class) RouterCall navigateAsync(@Caller Context context,
+      @Extra("id") int id);
+}
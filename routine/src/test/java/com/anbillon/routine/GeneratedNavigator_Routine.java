@@ -0,0 +1,29 @@
+// Generated code from Routine. Do not modify!
+package com.anbillon.routine;
+
+/**
+ * Output of {@code routine-compiler} for {@link GeneratedNavigator}, checked in since routine tests
+ * don't run annotation processors. Generation itself is covered by {@code RoutineProcessorTest}.
+ */
+@SuppressWarnings("unchecked")
+public final class GeneratedNavigator_Routine extends com.anbillon.routine.GeneratedRouter
+    implements com.anbillon.routine.GeneratedNavigator {
+  private static final com.anbillon.routine.MethodSpec[] METHOD_SPECS = {
+      new com.anbillon.routine.MethodSpec.Builder(
+          "com.anbillon.routine.GeneratedNavigator.navigateAsync(android.content.Context,int)",
+          com.anbillon.routine.RouterCall.class)
+          .page(com.anbillon.routine.TestActivity.class)
+          .callerParameter()
+          .extraParameter("id", int.class)
+          .build()
+  };
+
+  public GeneratedNavigator_Routine(com.anbillon.routine.Routine routine) {
+    super(routine, METHOD_SPECS);
+  }
+
+  @Override public com.anbillon.routine.RouterCall navigateAsync(android.content.Context context,
+      int id) {
+    return (com.anbillon.routine.RouterCall) invoke(0, new Object[] { context, id });
+  }
+}
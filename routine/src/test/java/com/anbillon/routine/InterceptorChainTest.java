@@ -0,0 +1,199 @@
+package com.anbillon.routine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests and allocation benchmark of {@link InterceptorChain}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class InterceptorChainTest {
+  private static final int INTERCEPTORS = 8;
+
+  private Router router;
+  private Interceptor[] interceptors;
+
+  @Before public void setUp() throws Exception {
+    RouterBuilder routerBuilder = new RouterBuilder();
+    routerBuilder.schemeUrl(Navigator.SCHEME_URL);
+    router = routerBuilder.build();
+
+    interceptors = new Interceptor[INTERCEPTORS + 1];
+    for (int i = 0; i < INTERCEPTORS; i++) {
+      interceptors[i] = new PassInterceptor();
+    }
+    interceptors[INTERCEPTORS] = new LastInterceptor();
+  }
+
+  @Test public void proceedThroughAllInterceptors() throws Exception {
+    final Router replaced = router.newBuilder().requestCode(1).build();
+    Interceptor replacing = new Interceptor() {
+      @Override public Router intercept(Chain chain) throws RoutineException {
+        assertSame(router, chain.router());
+        Router result = chain.proceed(replaced);
+        assertSame(router, chain.router());
+        return result;
+      }
+    };
+
+    Interceptor[] stack = { replacing, new PassInterceptor(), new LastInterceptor() };
+    assertSame(replaced, new InterceptorChain(stack, router).proceed(router));
+  }
+
+  @Test public void interceptorMustProceed() throws Exception {
+    Interceptor skipping = new Interceptor() {
+      @Override public Router intercept(Chain chain) {
+        return chain.router();
+      }
+    };
+
+    Interceptor[] stack = { new PassInterceptor(), skipping, new LastInterceptor() };
+    try {
+      new InterceptorChain(stack, router).proceed(router);
+      fail();
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("exactly once"));
+    }
+  }
+
+  @Test public void deadlineStopsChain() throws Exception {
+    final Interceptor slow = new Interceptor() {
+      @Override public Router intercept(Chain chain) throws RoutineException {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        return chain.proceed(chain.router());
+      }
+    };
+
+    Interceptor[] stack = { new PassInterceptor(), slow, new LastInterceptor() };
+    try {
+      new InterceptorChain(stack, router, null, null, 1000000).proceed(router);
+      fail();
+    } catch (RoutineTimeoutException e) {
+      assertSame(slow, e.interceptor());
+    }
+  }
+
+  @Test public void interceptorMustNotProceedTwice() throws Exception {
+    Interceptor twice = new Interceptor() {
+      @Override public Router intercept(Chain chain) throws RoutineException {
+        chain.proceed(chain.router());
+        return chain.proceed(chain.router());
+      }
+    };
+
+    Interceptor[] stack = { twice, new PassInterceptor(), new LastInterceptor() };
+    try {
+      new InterceptorChain(stack, router).proceed(router);
+      fail();
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("exactly once"));
+    }
+  }
+
+  @Test public void interceptorEndWhenThrown() throws Exception {
+    final List<String> events = new ArrayList<>();
+    EventListener listener = new EventListener() {
+      @Override public void interceptorStart(RouterCall<?> call, Interceptor interceptor) {
+        events.add("start " + interceptor.getClass().getSimpleName());
+      }
+
+      @Override public void interceptorEnd(RouterCall<?> call, Interceptor interceptor) {
+        events.add("end " + interceptor.getClass().getSimpleName());
+      }
+    };
+
+    Interceptor[] stack = { new PassInterceptor(), new ThrowInterceptor() };
+    try {
+      new InterceptorChain(stack, router, null, listener, 0).proceed(router);
+      fail();
+    } catch (RoutineException e) {
+      assertEquals("thrown", e.getMessage());
+    }
+    assertEquals(Arrays.asList("start PassInterceptor", "start ThrowInterceptor",
+        "end ThrowInterceptor", "end PassInterceptor"), events);
+  }
+
+  @Test public void cursorAllocatesLessThanChainPerHop() throws Exception {
+    long cursor = Allocations.bytesPerOperation(new Allocations.Task() {
+      @Override public void run() throws Exception {
+        new InterceptorChain(interceptors, router).proceed(router);
+      }
+    });
+    long perHop = Allocations.bytesPerOperation(new Allocations.Task() {
+      @Override public void run() throws Exception {
+        new ChainPerHop(interceptors, 0, router).proceed(router);
+      }
+    });
+
+    assertTrue("cursor " + cursor + " bytes/op, per hop " + perHop + " bytes/op",
+        cursor < perHop);
+  }
+
+  static final class PassInterceptor implements Interceptor {
+    @Override public Router intercept(Chain chain) throws RoutineException {
+      return chain.proceed(chain.router());
+    }
+  }
+
+  static final class LastInterceptor implements Interceptor {
+    @Override public Router intercept(Chain chain) {
+      return chain.router();
+    }
+  }
+
+  static final class ThrowInterceptor implements Interceptor {
+    @Override public Router intercept(Chain chain) throws RoutineException {
+      throw new RoutineException("thrown");
+    }
+  }
+
+  /**
+   * The chain which creates a new chain for each hop, as it was before the cursor.
+   */
+  static final class ChainPerHop implements Interceptor.Chain {
+    private final Interceptor[] interceptors;
+    private final Router router;
+    private final int index;
+    private int calls;
+
+    ChainPerHop(Interceptor[] interceptors, int index, Router router) {
+      this.interceptors = interceptors;
+      this.index = index;
+      this.router = router;
+    }
+
+    @Override public Router router() {
+      return router;
+    }
+
+    @Override public Router proceed(Router router) throws RoutineException {
+      calls++;
+      ChainPerHop next = new ChainPerHop(interceptors, index + 1, router);
+      Interceptor interceptor = interceptors[index];
+      Router result = interceptor.intercept(next);
+      if (index + 1 < interceptors.length && next.calls != 1) {
+        throw new IllegalStateException(
+            "Routine interceptor " + interceptor + " must call proceed() exactly once.");
+      }
+
+      return result;
+    }
+  }
+}
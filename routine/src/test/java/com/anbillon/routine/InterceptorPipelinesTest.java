@@ -0,0 +1,148 @@
+package com.anbillon.routine;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class InterceptorPipelinesTest {
+  private final Interceptor global = new PassInterceptor();
+  private final Interceptor schemeOnly = new PassInterceptor();
+  private final Interceptor auth = new PassInterceptor();
+  private final Interceptor pages = new PassInterceptor();
+
+  private InterceptorPipelines pipelines;
+
+  @Before public void setUp() throws Exception {
+    Routine routine = new Routine.Builder().addInterceptor(global)
+        .addInterceptor(schemeOnly,
+            new Interceptor.Scope.Builder().method(Method.SCHEME_URL).build())
+        .addInterceptor(auth, new Interceptor.Scope.Builder().method(Method.SCHEME_URL)
+            .targetPrefix("demo://auth/")
+            .build())
+        .addInterceptor(pages, new Interceptor.Scope.Builder().targetPrefix("com.demo.pages.")
+            .build())
+        .build();
+    pipelines = routine.pipelines;
+  }
+
+  @Test public void scopedByMethod() throws Exception {
+    List<Interceptor> pipeline = Arrays.asList(pipelines.get(pageNameRouter("com.demo.Main")));
+    assertTrue(pipeline.contains(global));
+    assertFalse(pipeline.contains(schemeOnly));
+    assertFalse(pipeline.contains(auth));
+    assertFalse(pipeline.contains(pages));
+  }
+
+  @Test public void scopedByTargetPrefix() throws Exception {
+    List<Interceptor> pipeline =
+        Arrays.asList(pipelines.get(schemeUrlRouter("demo://auth/login")));
+    assertEquals(Arrays.asList(global, schemeOnly, auth),
+        pipeline.subList(2, pipeline.size() - 1));
+
+    pipeline = Arrays.asList(pipelines.get(schemeUrlRouter("demo://test/login")));
+    assertEquals(Arrays.asList(global, schemeOnly), pipeline.subList(2, pipeline.size() - 1));
+
+    pipeline = Arrays.asList(pipelines.get(pageNameRouter("com.demo.pages.Detail")));
+    assertEquals(Arrays.asList(global, pages), pipeline.subList(1, pipeline.size() - 1));
+  }
+
+  @Test public void pipelineIsComposedOnce() throws Exception {
+    assertSame(pipelines.get(schemeUrlRouter("demo://auth/login")),
+        pipelines.get(schemeUrlRouter("demo://auth/logout")));
+    assertSame(pipelines.get(pageNameRouter("com.demo.Main")),
+        pipelines.get(pageNameRouter("com.demo.Other")));
+  }
+
+  @Test public void nestedPrefixesAllMatch() throws Exception {
+    Interceptor any = new PassInterceptor();
+    Interceptor demo = new PassInterceptor();
+    Interceptor login = new PassInterceptor();
+    InterceptorPipelines pipelines = new Routine.Builder()
+        .addInterceptor(any, new Interceptor.Scope.Builder().targetPrefix("").build())
+        .addInterceptor(login, new Interceptor.Scope.Builder().targetPrefix("demo://auth/login")
+            .build())
+        .addInterceptor(demo, new Interceptor.Scope.Builder().targetPrefix("demo://")
+            .targetPrefix("other://")
+            .build())
+        .build().pipelines;
+
+    List<Interceptor> pipeline =
+        Arrays.asList(pipelines.get(schemeUrlRouter("demo://auth/login?id=1")));
+    assertEquals(Arrays.asList(any, login, demo), pipeline.subList(2, pipeline.size() - 1));
+
+    pipeline = Arrays.asList(pipelines.get(schemeUrlRouter("demo://auth/logout")));
+    assertEquals(Arrays.asList(any, demo), pipeline.subList(2, pipeline.size() - 1));
+
+    pipeline = Arrays.asList(pipelines.get(schemeUrlRouter("other://auth/login")));
+    assertEquals(Arrays.asList(any, demo), pipeline.subList(2, pipeline.size() - 1));
+
+    pipeline = Arrays.asList(pipelines.get(schemeUrlRouter("demo:")));
+    assertEquals(Arrays.asList(any), pipeline.subList(2, pipeline.size() - 1));
+  }
+
+  @Test public void moreScopesThanCached() throws Exception {
+    Routine.Builder builder = new Routine.Builder();
+    Interceptor[] scoped = new Interceptor[100];
+    for (int i = 0; i < scoped.length; i++) {
+      scoped[i] = new PassInterceptor();
+      builder.addInterceptor(scoped[i],
+          new Interceptor.Scope.Builder().targetPrefix("demo://host" + i + "/").build());
+    }
+    InterceptorPipelines pipelines = builder.build().pipelines;
+
+    List<Interceptor> pipeline = Arrays.asList(pipelines.get(schemeUrlRouter("demo://host80/a")));
+    assertEquals(Arrays.asList(scoped[80]), pipeline.subList(2, pipeline.size() - 1));
+    assertEquals(3, pipelines.get(schemeUrlRouter("demo://other/a")).length);
+  }
+
+  @Test public void pipelinesCachedByMask() throws Exception {
+    Routine.Builder builder = new Routine.Builder();
+    Interceptor[] scoped = new Interceptor[60];
+    for (int i = 0; i < scoped.length; i++) {
+      scoped[i] = new PassInterceptor();
+      builder.addInterceptor(scoped[i],
+          new Interceptor.Scope.Builder().targetPrefix("demo://host" + i + "/").build());
+    }
+    InterceptorPipelines pipelines = builder.build().pipelines;
+
+    /* masks are cached out of order, including ones above the cache of boxed longs */
+    int[] hosts = { 59, 3, 40, 0, 7, 58, 21 };
+    Interceptor[][] cached = new Interceptor[hosts.length][];
+    for (int i = 0; i < hosts.length; i++) {
+      cached[i] = pipelines.get(schemeUrlRouter("demo://host" + hosts[i] + "/a"));
+      List<Interceptor> pipeline = Arrays.asList(cached[i]);
+      assertEquals(Arrays.asList(scoped[hosts[i]]), pipeline.subList(2, pipeline.size() - 1));
+    }
+    for (int i = 0; i < hosts.length; i++) {
+      assertSame(cached[i], pipelines.get(schemeUrlRouter("demo://host" + hosts[i] + "/b")));
+    }
+  }
+
+  private static Router schemeUrlRouter(String schemeUrl) {
+    RouterBuilder routerBuilder = new RouterBuilder();
+    routerBuilder.schemeUrl(schemeUrl);
+    return routerBuilder.build();
+  }
+
+  private static Router pageNameRouter(String pageName) {
+    RouterBuilder routerBuilder = new RouterBuilder();
+    routerBuilder.pageName(pageName);
+    return routerBuilder.build();
+  }
+
+  static final class PassInterceptor implements Interceptor {
+    @Override public Router intercept(Chain chain) throws RoutineException {
+      return chain.proceed(chain.router());
+    }
+  }
+}
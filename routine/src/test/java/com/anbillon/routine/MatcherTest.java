@@ -0,0 +1,233 @@
+package com.anbillon.routine;
+
+import android.content.Context;
+import android.content.Intent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests and benchmark of trie in {@link Matcher}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class MatcherTest {
+  private static final int ROUTES = 10000;
+
+  private Context context;
+
+  @Before public void setUp() throws Exception {
+    context = ShadowApplication.getInstance().getApplicationContext();
+  }
+
+  @Test public void segments() throws Exception {
+    assertEquals(Arrays.asList("demo:", "test", "user", "2"),
+        Matcher.segments("DEMO://Test/user//2/?id=3#top"));
+    assertEquals(Collections.singletonList("demo:"), Matcher.segments("demo://"));
+  }
+
+  @Test public void longestPrefixWins() throws Exception {
+    Matcher matcher = new Matcher.Builder().addPage("demo://test/user", Object.class)
+        .addPage("demo://test/user/detail?id=1", String.class)
+        .addPage("demo://test", Integer.class)
+        .build();
+
+    List<Matcher.Node> candidates = matcher.candidates("demo://test/user/detail/2?id=3");
+    assertEquals(3, candidates.size());
+    assertTrue(candidates.get(0).pages.contains(String.class));
+    assertTrue(candidates.get(2).pages.contains(Integer.class));
+
+    /* segments must be equal, not only a substring */
+    assertEquals(1, matcher.candidates("demo://test/users").size());
+    assertTrue(matcher.candidates("other://test/user").isEmpty());
+  }
+
+  @Test public void templates() throws Exception {
+    Matcher matcher = new Matcher.Builder()
+        .addPage("demo://shop/item/{id:long}/review/{reviewId}", Object.class)
+        .addPage("demo://shop/item/{id:long}/review/latest", String.class)
+        .addPage("demo://shop/item/{name}", Integer.class)
+        .build();
+
+    List<Matcher.Node> candidates = matcher.candidates("demo://shop/item/12/review/r3");
+    assertEquals(1, candidates.size());
+    Matcher.Node route = candidates.get(0);
+    assertTrue(route.pages.contains(Object.class));
+    assertEquals("id", route.params[0].name);
+    assertEquals(3, route.params[0].index);
+    assertEquals(Matcher.ParamType.LONG, route.params[0].type);
+    assertEquals("reviewId", route.params[1].name);
+
+    /* literal segment is preferred over placeholder */
+    candidates = matcher.candidates("demo://shop/item/12/review/latest");
+    assertTrue(candidates.get(0).pages.contains(String.class));
+
+    /* typed placeholder only matches its type, and shorter route is kept as fallback */
+    candidates = matcher.candidates("demo://shop/item/abc/review/r3");
+    assertEquals(1, candidates.size());
+    assertTrue(candidates.get(0).pages.contains(Integer.class));
+  }
+
+  @Test public void matchPutsTypedExtras() throws Exception {
+    Matcher matcher = new Matcher.Builder()
+        .addPage("demo://shop/item/{id:int}/order/{orderId:long}/{name}", TestActivity.class)
+        .build();
+
+    Intent intent = matcher.match(context,
+        "demo://shop/item/2147483647/order/-9223372036854775808/a%20b%2Fc+d?id=3");
+    assertNotNull(intent);
+    assertEquals(TestActivity.class.getName(), intent.getComponent().getClassName());
+    assertEquals(Integer.MAX_VALUE, intent.getIntExtra("id", 0));
+    assertEquals(Long.MIN_VALUE, intent.getLongExtra("orderId", 0));
+    assertEquals("a b/c+d", intent.getStringExtra("name"));
+  }
+
+  @Test public void matchFallsBackWhenOutOfRange() throws Exception {
+    Matcher matcher = new Matcher.Builder()
+        .addPage("demo://shop/item/{id:int}", TestActivity.class)
+        .addPage("demo://shop/item/{id:long}", TestActivity.class)
+        .build();
+
+    Intent intent = matcher.match(context, "demo://shop/item/2147483648");
+    assertNotNull(intent);
+    assertEquals(2147483648L, intent.getLongExtra("id", 0));
+    assertNull(matcher.match(context, "demo://shop/item/9223372036854775808"));
+  }
+
+  @Test public void typedPlaceholderRange() throws Exception {
+    assertTrue(Matcher.ParamType.INT.accepts("2147483647"));
+    assertTrue(Matcher.ParamType.INT.accepts("-2147483648"));
+    assertTrue(Matcher.ParamType.INT.accepts("0012"));
+    assertFalse(Matcher.ParamType.INT.accepts("2147483648"));
+    assertFalse(Matcher.ParamType.INT.accepts("-2147483649"));
+    assertFalse(Matcher.ParamType.INT.accepts("21474836470"));
+    assertTrue(Matcher.ParamType.LONG.accepts("9223372036854775807"));
+    assertTrue(Matcher.ParamType.LONG.accepts("-9223372036854775808"));
+    assertFalse(Matcher.ParamType.LONG.accepts("9223372036854775808"));
+    assertFalse(Matcher.ParamType.LONG.accepts("-9223372036854775809"));
+    assertFalse(Matcher.ParamType.INT.accepts("-"));
+    assertFalse(Matcher.ParamType.INT.accepts("1a"));
+    assertFalse(Matcher.ParamType.LONG.accepts("%31"));
+  }
+
+  @Test public void newBuilderDoesNotChangeMatcher() throws Exception {
+    Matcher matcher = new Matcher.Builder().addPage("demo://test/user", Object.class).build();
+    Matcher.Builder builder = matcher.newBuilder().addPage("demo://test/user", String.class);
+    Matcher added = builder.addPage("demo://test/order", Integer.class).build();
+    builder.addPage("demo://test/cart", Long.class);
+
+    assertEquals(1, matcher.candidates("demo://test/user").get(0).pages.size());
+    assertTrue(matcher.candidates("demo://test/order").isEmpty());
+    assertEquals(2, added.candidates("demo://test/user").get(0).pages.size());
+    assertTrue(added.candidates("demo://test/order").get(0).pages.contains(Integer.class));
+    assertTrue(added.candidates("demo://test/cart").isEmpty());
+  }
+
+  @Test public void newBuilderKeepsCandidatesOfMatcher() throws Exception {
+    Matcher matcher = matcher(ROUTES);
+    String schemeUrl = "demo://test/module1/page1/detail/2";
+    List<Matcher.Node> before = matcher.candidates(schemeUrl);
+    assertEquals(1, before.size());
+
+    /* a deeper route, a placeholder route and another page of an existing route */
+    Matcher snapshot = matcher.newBuilder()
+        .addPage("demo://test/module1/page1/detail", String.class)
+        .addPage("demo://test/module1/{name}/detail/{id:int}", Integer.class)
+        .addPage("demo://test/module1/page1", Long.class)
+        .build();
+
+    List<Matcher.Node> after = matcher.candidates(schemeUrl);
+    assertEquals(before.size(), after.size());
+    assertSame(before.get(0), after.get(0));
+    assertEquals(Collections.<Class<?>>singleton(Object.class), after.get(0).pages);
+    assertTrue(matcher.candidates("demo://test/module1/other/detail/2").isEmpty());
+
+    List<Matcher.Node> added = snapshot.candidates(schemeUrl);
+    assertEquals(2, added.size());
+    assertTrue(added.get(0).pages.contains(String.class));
+    assertEquals(2, added.get(1).pages.size());
+    assertEquals(1, snapshot.candidates("demo://test/module1/other/detail/2").size());
+  }
+
+  @Test public void newBuilderSharesRoutes() throws Exception {
+    final Matcher matcher = matcher(ROUTES);
+    long bytes = Allocations.bytesPerOperation(new Allocations.Task() {
+      @Override public void run() throws Exception {
+        matcher.newBuilder().addPage("demo://test/module1/page2", Object.class).build();
+      }
+    });
+    /* copying all routes would take megabytes */
+    assertTrue(bytes + " bytes to add one route to " + ROUTES + " routes", bytes < 16 * 1024);
+  }
+
+  @Test(expected = IllegalArgumentException.class) public void unknownPlaceholderType() {
+    new Matcher.Builder().addPage("demo://shop/item/{id:uuid}", Object.class).build();
+  }
+
+  @Test public void segmentPrefixAmongRoutes() throws Exception {
+    Matcher matcher = matcher(ROUTES);
+    String middle = "demo://test/module" + (ROUTES / 2);
+
+    List<Matcher.Node> candidates = matcher.candidates(middle + "/page?id=1");
+    assertEquals(1, candidates.size());
+    assertEquals(4, candidates.get(0).depth);
+
+    /* a route matches deeper urls, but only segment by segment */
+    candidates = matcher.candidates(middle + "/page/" + (ROUTES / 2));
+    assertEquals(1, candidates.size());
+    assertEquals(4, candidates.get(0).depth);
+    candidates = matcher.candidates(middle + "/page" + (ROUTES / 2) + "/detail");
+    assertEquals(1, candidates.size());
+    assertEquals(4, candidates.get(0).depth);
+
+    assertTrue(matcher.candidates(middle + "/pag").isEmpty());
+    assertTrue(matcher.candidates(middle + "0/page" + (ROUTES / 2)).isEmpty());
+    assertTrue(matcher.candidates("demo://test/module").isEmpty());
+  }
+
+  @Test public void longestRouteFirst() throws Exception {
+    Matcher matcher = new Matcher.Builder().addPage("demo://a/b", String.class)
+        .addPage("demo://a/b/c/d", Long.class)
+        .addPage("demo://a", Object.class)
+        .addPage("demo://a/b/c", Integer.class)
+        .build();
+
+    List<Matcher.Node> candidates = matcher.candidates("demo://a/b/c/d/e");
+    assertEquals(4, candidates.size());
+    assertTrue(candidates.get(0).pages.contains(Long.class));
+    assertTrue(candidates.get(1).pages.contains(Integer.class));
+    assertTrue(candidates.get(2).pages.contains(String.class));
+    assertTrue(candidates.get(3).pages.contains(Object.class));
+    for (int i = 1; i < candidates.size(); i++) {
+      assertEquals(candidates.get(i - 1).depth - 1, candidates.get(i).depth);
+    }
+
+    candidates = matcher.candidates("demo://a/b/x/d");
+    assertEquals(2, candidates.size());
+    assertTrue(candidates.get(0).pages.contains(String.class));
+    assertTrue(candidates.get(1).pages.contains(Object.class));
+  }
+
+  private static Matcher matcher(int routes) {
+    Matcher.Builder builder = new Matcher.Builder();
+    builder.addPage("demo://test/module" + (ROUTES / 2) + "/page", Object.class);
+    for (int i = 0; i < routes; i++) {
+      builder.addPage("demo://test/module" + i + "/page" + i, Object.class);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,159 @@
+package com.anbillon.routine;
+
+import android.content.Context;
+import com.anbillon.routine.app.Caller;
+import com.anbillon.routine.app.Page;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.annotation.Retention;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class MethodMetadataCacheTest {
+  /* writes files right away, a background write could replace the file corrupted by a test */
+  private static final Executor DIRECT = new Executor() {
+    @Override public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private Routine routine;
+  private File directory;
+
+  @Before public void setUp() throws Exception {
+    routine = new Routine.Builder().build();
+    directory = File.createTempFile("routine", "");
+    directory.delete();
+    directory.mkdirs();
+  }
+
+  @Test public void persistAndLoad() throws Exception {
+    writeNavigatorMetadata("1");
+
+    MethodMetadataCache.Metadata metadata =
+        new MethodMetadataCache(directory, "1").get(Navigator.class);
+    for (Method method : Utils.routerMethods(Navigator.class)) {
+      MethodSpec spec = metadata.get(method);
+      assertNotNull(spec);
+
+      RouterMethod<?> expected = new RouterMethod.Builder<>(routine, method).build();
+      RouterMethod<?> actual = RouterMethod.parse(routine, spec);
+      assertEquals(expected.methodHandlers.length, actual.methodHandlers.length);
+      assertEquals(expected.parameterHandlers.length, actual.parameterHandlers.length);
+      assertEquals(expected.adapter.callType(), actual.adapter.callType());
+    }
+  }
+
+  @Test public void discardOtherAppVersion() throws Exception {
+    writeNavigatorMetadata("1");
+
+    MethodMetadataCache.Metadata metadata =
+        new MethodMetadataCache(directory, "2").get(Navigator.class);
+    assertNull(metadata.get(Utils.routerMethods(Navigator.class)[0]));
+  }
+
+  @Test public void discardCorruptedFile() throws Exception {
+    File file = writeNavigatorMetadata("1");
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.seek(file.length() / 2);
+      randomAccessFile.write(~randomAccessFile.read());
+    } finally {
+      randomAccessFile.close();
+    }
+
+    MethodMetadataCache.Metadata metadata =
+        new MethodMetadataCache(directory, "1").get(Navigator.class);
+    assertNull(metadata.get(Utils.routerMethods(Navigator.class)[0]));
+    assertFalse(file.exists());
+  }
+
+  @Test public void discardTruncatedFile() throws Exception {
+    File file = new File(directory, Navigator.class.getName() + ".routine");
+    FileOutputStream output = new FileOutputStream(file);
+    output.write(new byte[] { 1, 2, 3 });
+    output.close();
+
+    MethodMetadataCache.Metadata metadata =
+        new MethodMetadataCache(directory, "1").get(Navigator.class);
+    assertNull(metadata.get(Utils.routerMethods(Navigator.class)[0]));
+  }
+
+  @Test public void encodeMoreThanByteCounts() throws Exception {
+    Type[] typeArguments = new Type[300];
+    ParameterHandler<?>[] parameterHandlers = new ParameterHandler<?>[300];
+    parameterHandlers[0] = new ParameterHandler.Caller<>(routine);
+    for (int i = 0; i < typeArguments.length; i++) {
+      typeArguments[i] = String.class;
+      if (i > 0) {
+        parameterHandlers[i] = new ParameterHandler.Extra<>("extra" + i, String.class);
+      }
+    }
+    RouterMethod<?> routerMethod =
+        new RouterMethod<>(new MethodHandler<?>[0], parameterHandlers, null);
+
+    byte[] record = MethodMetadataCache.encode(
+        MethodSpec.parameterizedType(Map.class, typeArguments), routerMethod);
+    MethodSpec spec = MethodMetadataCache.decode(Navigator.class, "navigate()", record);
+    assertEquals(300, spec.parameterHandlers.length);
+    assertEquals(300, ((ParameterizedType) spec.returnType).getActualTypeArguments().length);
+  }
+
+  @Test public void customAnnotationIsNotPersisted() throws Exception {
+    Method plain = CustomNavigator.class.getMethod("navigate", Context.class);
+    Method custom = CustomNavigator.class.getMethod("navigateCustom", Context.class);
+    assertTrue(MethodMetadataCache.hasBuiltInAnnotationsOnly(plain));
+    assertFalse(MethodMetadataCache.hasBuiltInAnnotationsOnly(custom));
+
+    /* adapters may choose by the custom annotation, which a restored method would not have */
+    RouterMethod<?> routerMethod = new RouterMethod.Builder<>(routine, plain).build();
+    MethodMetadataCache.Metadata metadata =
+        new MethodMetadataCache(directory, "1", DIRECT).get(CustomNavigator.class);
+    metadata.put(plain, routerMethod);
+    metadata.put(custom, routerMethod);
+    metadata.write();
+
+    metadata = new MethodMetadataCache(directory, "1").get(CustomNavigator.class);
+    assertNotNull(metadata.get(plain));
+    assertNull(metadata.get(custom));
+  }
+
+  private File writeNavigatorMetadata(String appVersion) {
+    MethodMetadataCache.Metadata metadata =
+        new MethodMetadataCache(directory, appVersion, DIRECT).get(Navigator.class);
+    for (Method method : Utils.routerMethods(Navigator.class)) {
+      metadata.put(method, new RouterMethod.Builder<>(routine, method).build());
+    }
+    metadata.write();
+
+    File file = new File(directory, Navigator.class.getName() + ".routine");
+    assertTrue(file.exists());
+    return file;
+  }
+
+  @Retention(RUNTIME) @interface Custom {
+  }
+
+  interface CustomNavigator {
+    @Page(TestActivity.class) RouterCall navigate(@Caller Context context);
+
+    @Custom @Page(TestActivity.class) RouterCall navigateCustom(@Caller Context context);
+  }
+}
@@ -7,6 +7,7 @@ import com.anbillon.routine.app.Extra;
 import com.anbillon.routine.app.Flags;
 import com.anbillon.routine.app.Page;
 import com.anbillon.routine.app.PageName;
+import com.anbillon.routine.app.RequestCode;
 import com.anbillon.routine.app.SchemeUrl;
 
 /**
@@ -24,4 +25,9 @@ public interface Navigator {
 
   @Page(TestActivity.class) void navigateWithPage(@Caller Context context,
       @Extra("gender") Gender gender);
+
+  @Page(TestActivity.class) RouterCall navigateAsync(@Caller Context context);
+
+  @Page(TestActivity.class) RouterCall navigateForResult(@Caller Context context,
+      @RequestCode int requestCode);
 }
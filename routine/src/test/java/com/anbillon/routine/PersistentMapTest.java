@@ -0,0 +1,42 @@
+package com.anbillon.routine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PersistentMapTest {
+
+  @Test public void plusKeepsOriginMap() throws Exception {
+    PersistentMap<String, Integer> map = PersistentMap.empty();
+    for (int i = 0; i < 1000; i++) {
+      map = map.plus("key" + i, i);
+    }
+    PersistentMap<String, Integer> replaced = map.plus("key1", -1);
+
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(Integer.valueOf(i), map.get("key" + i));
+    }
+    assertEquals(Integer.valueOf(-1), replaced.get("key1"));
+    assertNull(map.get("key1000"));
+    assertSame(map, map.plus("key2", map.get("key2")));
+  }
+
+  @Test public void collidedKeys() throws Exception {
+    /* "Aa", "BB" and "AaBB", "BBAa" have equal hash codes */
+    PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("Aa", 1)
+        .plus("BB", 2)
+        .plus("AaAa", 3)
+        .plus("BBBB", 4)
+        .plus("AaBB", 5);
+
+    assertEquals(Integer.valueOf(1), map.get("Aa"));
+    assertEquals(Integer.valueOf(2), map.get("BB"));
+    assertEquals(Integer.valueOf(3), map.get("AaAa"));
+    assertEquals(Integer.valueOf(4), map.get("BBBB"));
+    assertEquals(Integer.valueOf(5), map.get("AaBB"));
+    assertNull(map.get("BBAa"));
+    assertEquals(Integer.valueOf(6), map.plus("BBAa", 6).get("BBAa"));
+  }
+}
@@ -0,0 +1,64 @@
+package com.anbillon.routine;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class PreparedRoutersTest {
+  private RouterMethod<?> routerMethod;
+  private Router router;
+
+  @Before public void setUp() throws Exception {
+    routerMethod = new RouterMethod<>(new MethodHandler<?>[0], new ParameterHandler<?>[0], null);
+    RouterBuilder routerBuilder = new RouterBuilder();
+    routerBuilder.schemeUrl(Navigator.SCHEME_URL);
+    router = routerBuilder.build();
+  }
+
+  @Test public void takePreparedRouterOnce() throws Exception {
+    PreparedRouters preparedRouters = new PreparedRouters(TimeUnit.MINUTES.toNanos(1));
+    preparedRouters.put(routerMethod, new Object[] { "caller", 1 }, router);
+
+    assertSame(router, preparedRouters.take(routerMethod, new Object[] { "caller", 1 }));
+    assertNull(preparedRouters.take(routerMethod, new Object[] { "caller", 1 }));
+  }
+
+  @Test public void argumentsMustBeEqual() throws Exception {
+    PreparedRouters preparedRouters = new PreparedRouters(TimeUnit.MINUTES.toNanos(1));
+    preparedRouters.put(routerMethod, new Object[] { "caller", 1 }, router);
+
+    assertNull(preparedRouters.take(routerMethod, new Object[] { "caller", 2 }));
+  }
+
+  @Test public void expiredRouterIsNotTaken() throws Exception {
+    PreparedRouters preparedRouters = new PreparedRouters(0);
+    preparedRouters.put(routerMethod, new Object[] { "caller" }, router);
+    Thread.sleep(1);
+
+    assertNull(preparedRouters.take(routerMethod, new Object[] { "caller" }));
+  }
+
+  @Test public void untakenRouterIsReleasedAfterTtl() throws Exception {
+    ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor();
+    PreparedRouters preparedRouters =
+        new PreparedRouters(TimeUnit.MILLISECONDS.toNanos(10), sweeper);
+    preparedRouters.put(routerMethod, new Object[] { "caller" }, router);
+    assertEquals(1, preparedRouters.size());
+
+    /* delayed sweeps still run after shutdown, termination means the sweep is done */
+    sweeper.shutdown();
+    assertTrue(sweeper.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(0, preparedRouters.size());
+  }
+}
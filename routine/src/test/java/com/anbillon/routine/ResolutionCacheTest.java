@@ -0,0 +1,62 @@
+package com.anbillon.routine;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class ResolutionCacheTest {
+  private Context context;
+  private CountingIntent intent;
+
+  @Before public void setUp() throws Exception {
+    context = ShadowApplication.getInstance().getApplicationContext();
+    intent = new CountingIntent();
+  }
+
+  @Test public void negativeResultIsCached() throws Exception {
+    ResolutionCache cache = new ResolutionCache();
+    assertFalse(cache.resolve(context, intent, TestActivity.class));
+    assertFalse(cache.resolve(context, intent, TestActivity.class));
+    assertEquals(1, intent.resolveCount);
+  }
+
+  @Test public void invalidate() throws Exception {
+    ResolutionCache cache = new ResolutionCache();
+    cache.resolve(context, intent, TestActivity.class);
+    cache.invalidate();
+    cache.resolve(context, intent, TestActivity.class);
+    assertEquals(2, intent.resolveCount);
+  }
+
+  @Test public void invalidateOnPackageChanged() throws Exception {
+    ResolutionCache cache = new ResolutionCache();
+    cache.resolve(context, intent, TestActivity.class);
+    context.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_CHANGED,
+        Uri.parse("package:" + context.getPackageName())));
+    ShadowLooper.idleMainLooper();
+    cache.resolve(context, intent, TestActivity.class);
+    assertEquals(2, intent.resolveCount);
+  }
+
+  private static final class CountingIntent extends Intent {
+    int resolveCount;
+
+    @Override public ActivityInfo resolveActivityInfo(PackageManager pm, int flags) {
+      resolveCount++;
+      return null;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.anbillon.routine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class RouteTableTest {
+  private File file;
+
+  @Before public void setUp() throws Exception {
+    file = File.createTempFile("routes", ".table");
+  }
+
+  @After public void tearDown() throws Exception {
+    file.delete();
+  }
+
+  @Test public void matchMappedTable() throws Exception {
+    write(new RouteTable.Writer().addPageName("demo://shop", Integer.class.getName())
+        .addPageName("demo://shop/item/{id:long}/review/{reviewId}", String.class.getName())
+        .addPageName("demo://shop/item/{id:long}/review/latest", Long.class.getName())
+        .addPageName("demo://shop/cart", "com.anbillon.routine.Missing"));
+    Matcher matcher = new Matcher.Builder().addRouteTable(RouteTable.map(file)).build();
+
+    List<Matcher.Node> candidates = matcher.candidates("demo://shop/item/12/review/r3?id=1");
+    assertEquals(2, candidates.size());
+    Matcher.Node route = candidates.get(0);
+    assertTrue(route.pages.contains(String.class));
+    assertEquals(6, route.depth);
+    assertEquals("id", route.params[0].name);
+    assertEquals(Matcher.ParamType.LONG, route.params[0].type);
+    assertEquals("reviewId", route.params[1].name);
+    assertTrue(candidates.get(1).pages.contains(Integer.class));
+
+    candidates = matcher.candidates("demo://shop/item/12/review/latest");
+    assertTrue(candidates.get(0).pages.contains(Long.class));
+
+    /* route whose page is not found is skipped */
+    candidates = matcher.candidates("demo://shop/cart");
+    assertEquals(1, candidates.size());
+    assertTrue(candidates.get(0).pages.contains(Integer.class));
+    assertTrue(matcher.candidates("other://shop").isEmpty());
+  }
+
+  @Test public void builderRoutesWin() throws Exception {
+    write(new RouteTable.Writer().addPageName("demo://shop/item", Integer.class.getName())
+        .addPageName("demo://shop/item/detail", Long.class.getName()));
+    Matcher matcher = new Matcher.Builder().addRouteTable(RouteTable.map(file))
+        .addPage("demo://shop/item", String.class)
+        .build()
+        .newBuilder()
+        .build();
+
+    List<Matcher.Node> candidates = matcher.candidates("demo://shop/item/detail");
+    assertEquals(3, candidates.size());
+    assertTrue(candidates.get(0).pages.contains(Long.class));
+    assertTrue(candidates.get(1).pages.contains(String.class));
+    assertTrue(candidates.get(2).pages.contains(Integer.class));
+  }
+
+  @Test public void rejectInvalidTable() throws Exception {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      outputStream.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+    } finally {
+      outputStream.close();
+    }
+
+    try {
+      RouteTable.map(file);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test public void rejectCorruptedString() throws Exception {
+    ByteBuffer table = table();
+    /* the first string is the scheme of the only route */
+    table.putInt(16, table.capacity());
+    assertCorrupted(table);
+  }
+
+  @Test public void rejectCorruptedChild() throws Exception {
+    ByteBuffer table = table();
+    /* the first literal child of root, after the counts and placeholders of node */
+    int root = table.getInt(8);
+    table.putInt(root + 24 + 4, root);
+    assertCorrupted(table);
+  }
+
+  @Test public void rejectCorruptedPlaceholder() throws Exception {
+    ByteBuffer table = table();
+    for (int i = 0; i < table.capacity(); i += 4) {
+      /* the placeholder of route is the only one of type long */
+      if (table.getInt(i) == 3 && table.getInt(i + 8) == Matcher.ParamType.LONG.ordinal()) {
+        table.putInt(i, 7);
+      }
+    }
+    assertCorrupted(table);
+  }
+
+  private ByteBuffer table() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new RouteTable.Writer().addPageName("demo://shop/item/{id:long}", Integer.class.getName())
+        .writeTo(outputStream);
+    ByteBuffer table = ByteBuffer.wrap(outputStream.toByteArray());
+    new RouteTable(table);
+    return table;
+  }
+
+  private static void assertCorrupted(ByteBuffer table) {
+    try {
+      new RouteTable(table);
+      fail();
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("corrupted"));
+    }
+  }
+
+  private void write(RouteTable.Writer writer) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      writer.writeTo(outputStream);
+    } finally {
+      outputStream.close();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.anbillon.routine;
+
+import android.content.Context;
+import android.content.Intent;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of work and allocations in {@link RouterMethod#toRouter(RouterBuilderPool, Object...)}.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class RouterMethodAllocationTest {
+  private RouterMethod<?> routerMethod;
+  private Object caller;
+
+  @Before public void setUp() throws Exception {
+    final Resolver resolver = new FakeResolver();
+    Routine routine = new Routine.Builder().addResolverFactory(new Resolver.Factory() {
+      @Override protected <T> Resolver create(T caller) {
+        return resolver;
+      }
+    }).build();
+    Method method = Navigator.class.getMethod("navigateWithPage", Context.class, Gender.class);
+    routerMethod = new RouterMethod.Builder<>(routine, method).build();
+    caller = new Object();
+  }
+
+  @Test public void templateAppliesMethodHandlersOnce() throws Exception {
+    final AtomicInteger applied = new AtomicInteger();
+    MethodHandler<?> page = new MethodHandler<Class<?>>(TestActivity.class) {
+      @Override void apply(RouterBuilder builder) {
+        applied.incrementAndGet();
+        builder.page(value);
+      }
+    };
+    RouterMethod<?> counting = new RouterMethod<>(new MethodHandler<?>[] { page },
+        routerMethod.parameterHandlers, null);
+
+    for (int i = 0; i < 100; i++) {
+      assertSame(TestActivity.class, counting.toRouter(null, caller, Gender.MALE).page());
+    }
+
+    /* applied into the template when the method is created, never again on each call */
+    assertEquals(1, applied.get());
+  }
+
+  @Test public void pooledBuildersAllocateLess() throws Exception {
+    final RouterBuilderPool pool = new RouterBuilderPool();
+    long pooled = Allocations.bytesPerOperation(new Allocations.Task() {
+      @Override public void run() {
+        routerMethod.toRouter(pool, caller, Gender.MALE);
+      }
+    });
+    long unpooled = Allocations.bytesPerOperation(new Allocations.Task() {
+      @Override public void run() {
+        routerMethod.toRouter(null, caller, Gender.MALE);
+      }
+    });
+
+    assertTrue("pooled " + pooled + " bytes/op, new " + unpooled + " bytes/op",
+        pooled < unpooled);
+  }
+
+  @Test public void pooledBuilderNeverSharesRouter() throws Exception {
+    RouterBuilderPool pool = new RouterBuilderPool();
+    Router first = routerMethod.toRouter(pool, caller, Gender.MALE);
+    Router second = routerMethod.toRouter(pool, caller, Gender.FEMALE);
+
+    assertNotSame(first, second);
+    assertNotSame(first.intent(), second.intent());
+    assertSame(first.page(), second.page());
+  }
+
+  static final class FakeResolver implements Resolver {
+    @Override public String callerName() {
+      return "caller";
+    }
+
+    @Override public Context context() {
+      return null;
+    }
+
+    @Override public void startActivity(Intent intent, int enterAnim, int exitAnim) {
+    }
+
+    @Override public void startActivityForResult(Intent intent, int requestCode, int enterAnim,
+        int exitAnim) {
+    }
+
+    @Override public void startActivities(Intent[] intents, int enterAnim, int exitAnim) {
+    }
+  }
+}
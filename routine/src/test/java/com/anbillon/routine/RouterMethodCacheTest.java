@@ -0,0 +1,114 @@
+package com.anbillon.routine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Stress test for {@link RouterMethodCache} under contention.
+ *
+ * @author Vincent Cheung (coolingfall@gmail.com)
+ */
+public final class RouterMethodCacheTest {
+  private static final int THREADS = 8;
+
+  @Test public void parseDifferentKeysConcurrently() throws Throwable {
+    /* each parse waits for all the others to start, a global lock never lets them all in */
+    LatchCache cache = new LatchCache(THREADS);
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      keys.add(i);
+    }
+
+    loadConcurrently(cache, keys);
+
+    assertEquals(THREADS, cache.parseCount.get());
+  }
+
+  @Test public void parseEachKeyExactlyOnce() throws Throwable {
+    LatchCache cache = new LatchCache(4);
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < THREADS * 4; i++) {
+      keys.add(i % 4);
+    }
+
+    List<RouterMethod<?>> results = loadConcurrently(cache, keys);
+
+    assertEquals(4, cache.parseCount.get());
+    for (int i = 0; i < keys.size(); i++) {
+      assertSame(cache.get(keys.get(i)), results.get(i));
+    }
+  }
+
+  private static List<RouterMethod<?>> loadConcurrently(final LatchCache cache,
+      final List<Integer> keys) throws Throwable {
+    final CountDownLatch startGate = new CountDownLatch(1);
+    final CountDownLatch endGate = new CountDownLatch(keys.size());
+    final RouterMethod<?>[] results = new RouterMethod<?>[keys.size()];
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    for (int i = 0; i < keys.size(); i++) {
+      final int index = i;
+      new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            startGate.await();
+            results[index] = cache.get(keys.get(index));
+          } catch (Throwable e) {
+            errors.add(e);
+          } finally {
+            endGate.countDown();
+          }
+        }
+      }).start();
+    }
+
+    startGate.countDown();
+    endGate.await();
+
+    /* failures on worker threads fail the test */
+    if (!errors.isEmpty()) {
+      throw errors.get(0);
+    }
+
+    List<RouterMethod<?>> list = new ArrayList<>();
+    Collections.addAll(list, results);
+    return list;
+  }
+
+  static final class LatchCache extends RouterMethodCache<Integer> {
+    final AtomicInteger parseCount = new AtomicInteger();
+    final ConcurrentMap<Integer, Boolean> parsed = new ConcurrentHashMap<>();
+    private final CountDownLatch parsing;
+
+    LatchCache(int concurrentParses) {
+      this.parsing = new CountDownLatch(concurrentParses);
+    }
+
+    @Override RouterMethod<?> parse(Integer key) {
+      if (parsed.putIfAbsent(key, true) != null) {
+        throw new AssertionError("Key " + key + " was parsed twice.");
+      }
+
+      parseCount.incrementAndGet();
+      parsing.countDown();
+      try {
+        if (!parsing.await(5, TimeUnit.SECONDS)) {
+          throw new AssertionError("Key " + key + " was not parsed concurrently.");
+        }
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+
+      return new RouterMethod<>(new MethodHandler<?>[0], new ParameterHandler<?>[0], null);
+    }
+  }
+}
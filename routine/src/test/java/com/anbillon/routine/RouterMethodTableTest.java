@@ -0,0 +1,59 @@
+package com.anbillon.routine;
+
+import android.content.Context;
+import com.anbillon.routine.app.Caller;
+import com.anbillon.routine.app.Extra;
+import com.anbillon.routine.app.PageName;
+import java.lang.reflect.Method;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class RouterMethodTableTest {
+  @Test public void equalMethodsHitTable() throws Exception {
+    Routine routine = new Routine.Builder().recordStats(true).build();
+    RouterMethodTable table = new RouterMethodTable(routine, Navigator.class);
+    /* like ART, reflection returns a new but equal method instance each time */
+    Method first = Navigator.class.getMethod("navigateAsync", Context.class);
+    Method second = Navigator.class.getMethod("navigateAsync", Context.class);
+    assertNotSame(first, second);
+    assertEquals(first, second);
+
+    RouterMethod<?> routerMethod = table.get(first);
+    assertSame(routerMethod, table.get(second));
+    assertSame(routerMethod, table.get(Navigator.class.getMethod("navigateAsync", Context.class)));
+
+    /* only the first call looks up the method cache of routine */
+    assertEquals(1, routine.stats().methodCacheMisses());
+    assertEquals(0, routine.stats().methodCacheHits());
+  }
+
+  @Test public void overloadsResolvedByEquality() throws Exception {
+    Routine routine = new Routine.Builder().recordStats(true).build();
+    RouterMethodTable table = new RouterMethodTable(routine, OverloadedNavigator.class);
+    Method plain = OverloadedNavigator.class.getMethod("navigate", Context.class);
+    Method withId = OverloadedNavigator.class.getMethod("navigate", Context.class, int.class);
+
+    RouterMethod<?> plainMethod = table.get(plain);
+    RouterMethod<?> withIdMethod = table.get(withId);
+    assertNotSame(plainMethod, withIdMethod);
+    assertEquals(1, plainMethod.parameterHandlers.length);
+    assertEquals(2, withIdMethod.parameterHandlers.length);
+    Method again = OverloadedNavigator.class.getMethod("navigate", Context.class);
+    assertSame(plainMethod, table.get(again));
+    assertEquals(2, routine.stats().methodCacheMisses());
+    assertEquals(0, routine.stats().methodCacheHits());
+  }
+
+  interface OverloadedNavigator {
+    @PageName(Navigator.PAGE_NAME) void navigate(@Caller Context context);
+
+    @PageName(Navigator.PAGE_NAME) void navigate(@Caller Context context, @Extra("id") int id);
+  }
+}
@@ -0,0 +1,41 @@
+package com.anbillon.routine;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
+public class RouterObserverTest {
+
+  @Test public void observeSnapshotOnExecutor() throws Exception {
+    final AtomicReference<Runnable> pending = new AtomicReference<>();
+    final AtomicReference<Router> observed = new AtomicReference<>();
+    Routine routine = new Routine.Builder().addObserver(new RouterObserver() {
+      @Override public void onRouter(Router router) {
+        observed.set(router);
+      }
+    }).observerExecutor(new Executor() {
+      @Override public void execute(Runnable command) {
+        pending.set(command);
+      }
+    }).build();
+
+    RouterBuilder routerBuilder = new RouterBuilder();
+    routerBuilder.schemeUrl(Navigator.SCHEME_URL);
+    Router router = routerBuilder.build();
+    routine.notifyObservers(router);
+
+    /* observers never run on the navigation path */
+    assertNull(observed.get());
+    pending.get().run();
+    assertEquals(router.target(), observed.get().target());
+    assertNotSame(router.intent(), observed.get().intent());
+  }
+}
@@ -1,7 +1,30 @@
 package com.anbillon.routine;
 
 import android.content.Context;
+import android.content.Intent;
 import android.net.Uri;
+import com.anbillon.routine.app.Caller;
+import com.anbillon.routine.app.Extra;
+import com.anbillon.routine.app.Page;
+import com.anbillon.routine.app.PageName;
+import com.anbillon.routine.app.RequestCode;
+import com.anbillon.routine.app.SchemeUrl;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -9,8 +32,15 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowLooper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(RobolectricTestRunner.class) @Config(constants = BuildConfig.class, sdk = 21)
 public class RoutineTest {
@@ -37,4 +67,516 @@ public class RoutineTest {
     navigator.navigateWithPageName(context, 2);
     navigator.navigateWithPage(context, Gender.FEMALE);
   }
+
+  @Test public void testEnqueue() throws Exception {
+    Routine routine = new Routine.Builder().callExecutor(new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    }).build();
+
+    final AtomicReference<Router> result = new AtomicReference<>();
+    routine.create(Navigator.class).navigateAsync(context).enqueue(new RouterCall.Callback() {
+      @Override public void onResult(RouterCall<?> call, Router router, boolean started) {
+        result.set(router);
+      }
+
+      @Override public void onFailure(RouterCall<?> call, RoutineException e) {
+        fail();
+      }
+    });
+    ShadowLooper.idleMainLooper();
+
+    assertNotNull(result.get());
+    assertEquals(TestActivity.class.getName(), result.get().intent().getComponent().getClassName());
+  }
+
+  @Test public void testEnqueueInterceptorThrows() throws Exception {
+    final IllegalStateException thrown = new IllegalStateException("broken interceptor");
+    final AtomicReference<RoutineException> failure = new AtomicReference<>();
+    final AtomicReference<RoutineException> failed = new AtomicReference<>();
+    Routine routine = new Routine.Builder().callExecutor(new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    }).addInterceptor(new Interceptor() {
+      @Override public Router intercept(Chain chain) {
+        throw thrown;
+      }
+    }).eventListenerFactory(new EventListener.Factory() {
+      @Override public EventListener create(RouterCall<?> call) {
+        return new EventListener() {
+          @Override public void callFailed(RouterCall<?> call, RoutineException e) {
+            failed.set(e);
+          }
+        };
+      }
+    }).build();
+
+    routine.create(Navigator.class).navigateAsync(context).enqueue(new RouterCall.Callback() {
+      @Override public void onResult(RouterCall<?> call, Router router, boolean started) {
+        fail();
+      }
+
+      @Override public void onFailure(RouterCall<?> call, RoutineException e) {
+        failure.set(e);
+      }
+    });
+    ShadowLooper.idleMainLooper();
+
+    assertNotNull(failure.get());
+    assertSame(thrown, failure.get().getCause());
+    assertSame(failure.get(), failed.get());
+  }
+
+  @Test public void testPrepareDropsRuntimeException() throws Exception {
+    final AtomicInteger intercepted = new AtomicInteger();
+    Routine routine = new Routine.Builder().callExecutor(new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    }).addInterceptor(new Interceptor() {
+      @Override public Router intercept(Chain chain) {
+        intercepted.incrementAndGet();
+        throw new IllegalStateException("broken interceptor");
+      }
+    }).build();
+    Navigator navigator = routine.create(Navigator.class);
+
+    navigator.navigateAsync(context).prepare();
+    assertEquals(1, intercepted.get());
+    try {
+      navigator.navigateAsync(context).execute();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("broken interceptor", e.getMessage());
+    }
+    assertEquals(2, intercepted.get());
+  }
+
+  @Test public void testCreateGenerated() throws Exception {
+    Routine routine = new Routine.Builder().recordStats(true).build();
+    GeneratedNavigator generated = routine.create(GeneratedNavigator.class);
+    assertTrue(generated instanceof GeneratedNavigator_Routine);
+
+    Router router = generated.navigateAsync(context, 7).router();
+    assertEquals(TestActivity.class, router.page());
+    assertEquals(7, router.intent().getIntExtra("id", 0));
+    assertSame(generated, routine.create(GeneratedNavigator.class));
+  }
+
+  @Test public void testExecuteAll() throws Exception {
+    final RecordingResolver resolver = new RecordingResolver(context);
+    Routine routine = new Routine.Builder().addResolverFactory(new Resolver.Factory() {
+      @Override protected <T> Resolver create(T caller) {
+        return resolver;
+      }
+    }).build();
+    /* built-in resolvers serve contexts, an object caller is resolved by the recording one */
+    CallerNavigator navigator = routine.create(CallerNavigator.class);
+    Object caller = new Object();
+
+    RouterCall first = navigator.navigate(caller, 1);
+    RouterCall second = navigator.navigate(caller, 2);
+    assertTrue(RouterCall.executeAll(first, second));
+
+    assertEquals(0, resolver.started.size());
+    assertEquals(1, resolver.startedAll.size());
+    Intent[] intents = resolver.startedAll.get(0);
+    assertEquals(2, intents.length);
+    assertEquals(1, intents[0].getIntExtra("id", 0));
+    assertEquals(2, intents[1].getIntExtra("id", 0));
+  }
+
+  @Test public void testExecuteAllRejectsRequestCodeFirst() throws Exception {
+    final AtomicInteger intercepted = new AtomicInteger();
+    final AtomicInteger observed = new AtomicInteger();
+    Routine routine = new Routine.Builder().addInterceptor(new Interceptor() {
+      @Override public Router intercept(Chain chain) throws RoutineException {
+        intercepted.incrementAndGet();
+        return chain.proceed(chain.router());
+      }
+    }).addObserver(new RouterObserver() {
+      @Override public void onRouter(Router router) {
+        observed.incrementAndGet();
+      }
+    }).observerExecutor(new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    }).build();
+    Navigator navigator = routine.create(Navigator.class);
+
+    RouterCall first = navigator.navigateAsync(context);
+    RouterCall forResult = navigator.navigateForResult(context, 1);
+    try {
+      RouterCall.executeAll(first, forResult);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("request code"));
+    }
+    assertEquals(0, intercepted.get());
+    assertEquals(0, observed.get());
+  }
+
+  @Test public void testObserveStartedRouters() throws Exception {
+    final RecordingResolver resolver = new RecordingResolver(context);
+    final List<Router> observed = new ArrayList<>();
+    Routine routine = new Routine.Builder().addResolverFactory(new Resolver.Factory() {
+      @Override protected <T> Resolver create(T caller) {
+        return resolver;
+      }
+    }).addObserver(new RouterObserver() {
+      @Override public void onRouter(Router router) {
+        observed.add(router);
+      }
+    }).observerExecutor(new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    }).build();
+    CallerNavigator navigator = routine.create(CallerNavigator.class);
+    Object caller = new Object();
+
+    navigator.navigate(caller, 1).router();
+    navigator.navigate(caller, 2).prepare();
+    assertEquals(0, observed.size());
+
+    assertTrue(navigator.navigate(caller, 3).execute());
+    assertEquals(1, observed.size());
+    assertEquals(3, observed.get(0).intent().getIntExtra("id", 0));
+
+    assertTrue(RouterCall.executeAll(navigator.navigate(caller, 4), navigator.navigate(caller, 5)));
+    assertEquals(3, observed.size());
+    assertEquals(4, observed.get(1).intent().getIntExtra("id", 0));
+    assertEquals(5, observed.get(2).intent().getIntExtra("id", 0));
+  }
+
+  @Test public void testTimingEventListenerEndAfterTimeout() throws Exception {
+    final List<Map<String, Long>> reports = new ArrayList<>();
+    EventListener listener = TimingEventListener.factory(new TimingEventListener.Reporter() {
+      @Override public void report(RouterCall<?> call, Map<String, Long> durations) {
+        reports.add(durations);
+      }
+    }).create(null);
+    final Interceptor interceptor = new Interceptor() {
+      @Override public Router intercept(Chain chain) throws RoutineException {
+        return chain.proceed(chain.router());
+      }
+    };
+
+    listener.callStart(null, 0);
+    listener.interceptorStart(null, interceptor);
+    listener.callFailed(null, new RoutineTimeoutException(interceptor, 1));
+    /* the abandoned chain ends its interceptor after the call has been reported */
+    listener.interceptorEnd(null, interceptor);
+
+    assertEquals(1, reports.size());
+    assertFalse(reports.get(0).containsKey(interceptor.getClass().getName()));
+  }
+
+  @Test public void testTimingEventListener() throws Exception {
+    final AtomicReference<Map<String, Long>> result = new AtomicReference<>();
+    Routine routine = new Routine.Builder().eventListenerFactory(
+        TimingEventListener.factory(new TimingEventListener.Reporter() {
+          @Override public void report(RouterCall<?> call, Map<String, Long> durations) {
+            result.set(durations);
+          }
+        })).build();
+
+    routine.create(Navigator.class).navigateAsync(context).execute();
+
+    Map<String, Long> durations = result.get();
+    assertNotNull(durations);
+    assertTrue(durations.containsKey(TimingEventListener.DISPATCH));
+    assertTrue(durations.containsKey(TimingEventListener.TO_ROUTER));
+    assertTrue(durations.containsKey(TimingEventListener.RESOLVE));
+    assertTrue(durations.containsKey(BridgeInterceptor.class.getName()));
+    assertTrue(durations.containsKey(RealInterceptor.class.getName()));
+    assertTrue(durations.containsKey(TimingEventListener.START_ACTIVITY));
+    assertTrue(durations.get(TimingEventListener.CALL)
+        >= durations.get(BridgeInterceptor.class.getName()));
+  }
+
+  @Test public void testCallTimeoutFallback() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch abandoned = new CountDownLatch(1);
+    final Interceptor slow = new Interceptor() {
+      @Override public Router intercept(Chain chain) throws RoutineException {
+        try {
+          /* never released, the timed out call interrupts it */
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          chain.router().intent().putExtra("abandoned", "true");
+          abandoned.countDown();
+          Thread.currentThread().interrupt();
+        }
+        return chain.proceed(chain.router());
+      }
+    };
+    final AtomicReference<RoutineTimeoutException> timeout = new AtomicReference<>();
+    Routine routine = new Routine.Builder().addInterceptor(slow)
+        .recordStats(true)
+        .callTimeout(50, TimeUnit.MILLISECONDS)
+        .timeoutFallback(new TimeoutFallback() {
+          @Override public Router fallback(Router router, RoutineTimeoutException e) {
+            timeout.set(e);
+            return router;
+          }
+        })
+        .build();
+
+    Router router = routine.create(Navigator.class).navigateAsync(context).router();
+    assertEquals(TestActivity.class, router.page());
+    assertEquals(TestActivity.class.getName(), router.intent().getComponent().getClassName());
+    assertSame(slow, timeout.get().interceptor());
+    assertEquals(Long.valueOf(1),
+        routine.stats().interceptorTimeouts().get(slow.getClass().getName()));
+
+    /* the abandoned chain mutates its own intent, not the one of fallback */
+    assertTrue(abandoned.await(5, TimeUnit.SECONDS));
+    assertNull(router.intent().getStringExtra("abandoned"));
+  }
+
+  @Test public void testCreateCachesRouter() throws Exception {
+    Routine routine = new Routine.Builder().build();
+    assertSame(routine.create(Navigator.class), routine.create(Navigator.class));
+  }
+
+  @Test public void testWarmUp() throws Exception {
+    Routine routine = new Routine.Builder().recordStats(true).build();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      routine.warmUp(Navigator.class, executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    int methods = Navigator.class.getDeclaredMethods().length;
+    assertEquals(methods, routine.stats().methodCacheMisses());
+    /* methods are parsed already, navigation doesn't parse again */
+    routine.create(Navigator.class).navigateAsync(context);
+    assertEquals(methods, routine.stats().methodCacheMisses());
+    assertEquals(1, routine.stats().methodCacheHits());
+  }
+
+  @Test public void testValidateEagerlyWarmsUpOnce() throws Exception {
+    final ExecutorService pool = Executors.newFixedThreadPool(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger parses = new AtomicInteger();
+    final Routine routine = new Routine.Builder().validateEagerly(new Executor() {
+      @Override public void execute(final Runnable command) {
+        parses.incrementAndGet();
+        pool.execute(new Runnable() {
+          @Override public void run() {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            command.run();
+          }
+        });
+      }
+    }).build();
+
+    final AtomicReference<Navigator> created = new AtomicReference<>();
+    Thread racing = new Thread(new Runnable() {
+      @Override public void run() {
+        created.set(routine.create(Navigator.class));
+      }
+    });
+    try {
+      Thread first = new Thread(new Runnable() {
+        @Override public void run() {
+          routine.create(Navigator.class);
+        }
+      });
+      first.start();
+      while (parses.get() == 0) {
+        Thread.yield();
+      }
+      racing.start();
+      /* the racing create waits for the warm-up started by the first one */
+      while (racing.getState() != Thread.State.WAITING) {
+        Thread.yield();
+      }
+      release.countDown();
+      first.join();
+      racing.join();
+    } finally {
+      pool.shutdown();
+    }
+
+    assertNotNull(created.get());
+    assertEquals(Navigator.class.getDeclaredMethods().length, parses.get());
+  }
+
+  @Test public void testWarmUpAggregatesErrors() throws Exception {
+    Routine routine = new Routine.Builder().build();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      routine.warmUp(BadNavigator.class, executor);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("2 error(s)"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void testRecordStats() throws Exception {
+    Routine routine = new Routine.Builder().recordStats(true).build();
+    routine.create(Navigator.class);
+    routine.create(Navigator.class);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      routine.warmUp(Navigator.class, executor);
+      routine.warmUp(Navigator.class, executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    int methodCount = Utils.routerMethods(Navigator.class).length;
+    RoutineStats stats = routine.stats();
+    assertEquals(1, stats.routerCacheHits());
+    assertEquals(1, stats.routerCacheMisses());
+    assertEquals(Navigator.class.getName(), stats.routers().get(0).name());
+    assertEquals(methodCount, stats.methodCacheHits());
+    assertEquals(methodCount, stats.methodCacheMisses());
+    assertEquals(methodCount, stats.methods().size());
+    assertEquals(methodCount, stats.adapterLookups());
+    for (RoutineStats.MethodStats method : stats.methods()) {
+      assertTrue(method.name().startsWith(Navigator.class.getName() + "."));
+      assertTrue(method.parseNanos() >= method.adapterNanos());
+    }
+  }
+
+  @Test public void testRecordStatsOfOverloads() throws Exception {
+    Routine routine = new Routine.Builder().recordStats(true).build();
+    routine.create(Navigator.class);
+    routine.create(OverloadedNavigator.class);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      routine.warmUp(OverloadedNavigator.class, executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    RoutineStats stats = routine.stats();
+    assertEquals(2, stats.routerCacheMisses());
+    Set<String> names = new HashSet<>();
+    for (RoutineStats.MethodStats method : stats.methods()) {
+      names.add(method.name());
+    }
+    String prefix = OverloadedNavigator.class.getName() + ".navigate(android.content.Context";
+    assertEquals(new HashSet<>(Arrays.asList(prefix + ")", prefix + ",int)")), names);
+  }
+
+  @Test public void testAdapterIsSharedByReturnType() throws Exception {
+    final AtomicInteger factoryCalls = new AtomicInteger();
+    Routine routine = new Routine.Builder().addAdapterFactory(new Adapter.Factory() {
+      @Override public Adapter<?> get(Type returnType, Annotation[] annotations, Routine routine) {
+        if (returnType != Object.class) {
+          return null;
+        }
+
+        factoryCalls.incrementAndGet();
+        return new Adapter<Object>() {
+          @Override public Type callType() {
+            return void.class;
+          }
+
+          @Override public Object adapt(RouterCall call) {
+            return null;
+          }
+        };
+      }
+    }).build();
+
+    Method[] methods = Utils.routerMethods(ObjectNavigator.class);
+    Adapter<?> first = routine.loadRouterMethod(methods[0]).adapter;
+    Adapter<?> second = routine.loadRouterMethod(methods[1]).adapter;
+    assertSame(first, second);
+    assertEquals(1, factoryCalls.get());
+  }
+
+  @Test public void testRouterCallType() throws Exception {
+    Routine routine = new Routine.Builder().build();
+    Method method = Navigator.class.getMethod("navigateAsync", Context.class);
+    assertEquals(RouterCall.class, routine.loadRouterMethod(method).adapter.callType());
+  }
+
+  @Test public void testFiltersEvaluatedOnce() throws Exception {
+    final AtomicInteger filterCalls = new AtomicInteger();
+    Routine routine = new Routine.Builder().addFilter(new Filter() {
+      @Override public Matcher filter(Chain chain) {
+        filterCalls.incrementAndGet();
+        return chain.proceed(chain.matcher().newBuilder().addPage("demo://test/check",
+            TestActivity.class).build());
+      }
+    }).build();
+
+    Matcher matcher = routine.matcher();
+    assertSame(matcher, routine.matcher());
+    assertEquals(1, filterCalls.get());
+
+    routine.invalidateFilters();
+    routine.matcher();
+    assertEquals(2, filterCalls.get());
+  }
+
+  static final class RecordingResolver implements Resolver {
+    final List<Intent> started = new ArrayList<>();
+    final List<Intent[]> startedAll = new ArrayList<>();
+    private final Context context;
+
+    RecordingResolver(Context context) {
+      this.context = context;
+    }
+
+    @Override public String callerName() {
+      return "caller";
+    }
+
+    @Override public Context context() {
+      return context;
+    }
+
+    @Override public void startActivity(Intent intent, int enterAnim, int exitAnim) {
+      started.add(intent);
+    }
+
+    @Override public void startActivityForResult(Intent intent, int requestCode, int enterAnim,
+        int exitAnim) {
+      started.add(intent);
+    }
+
+    @Override public void startActivities(Intent[] intents, int enterAnim, int exitAnim) {
+      startedAll.add(intents);
+    }
+  }
+
+  interface CallerNavigator {
+    @Page(TestActivity.class) RouterCall navigate(@Caller Object caller, @Extra("id") int id);
+  }
+
+  interface ObjectNavigator {
+    @SchemeUrl(Navigator.SCHEME_URL) Object navigateWithSchemeUrl(@Caller Context context);
+
+    @PageName(Navigator.PAGE_NAME) Object navigateWithPageName(@Caller Context context);
+  }
+
+  interface OverloadedNavigator {
+    @PageName(Navigator.PAGE_NAME) void navigate(@Caller Context context);
+
+    @PageName(Navigator.PAGE_NAME) void navigate(@Caller Context context, @Extra("id") int id);
+  }
+
+  interface BadNavigator {
+    @SchemeUrl(Navigator.SCHEME_URL) void withoutCaller(Context context);
+
+    @PageName(Navigator.PAGE_NAME) void withLongRequestCode(@Caller Context context,
+        @RequestCode long requestCode);
+  }
 }
\ No newline at end of file
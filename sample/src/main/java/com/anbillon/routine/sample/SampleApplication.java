@@ -25,7 +25,7 @@ public final class SampleApplication extends Application {
             .addInterceptor(new RoutineAuthInterceptor())
             .addInterceptor(new IdentityInterceptor())
             .addInterceptor(new NotFoundInterceptor())
-            .addInterceptor(
+            .addObserver(
                 new RoutineLoggingInterceptor().setLevel(RoutineLoggingInterceptor.Level.ALL))
             .build();
 